@@ -0,0 +1,101 @@
+package hashes;
+
+import java.util.Random;
+
+/**
+ * Compares LinearProbingHashST.getAll() and putAll() with a loop of get()
+ * and put() calls over the same batches of random keys.
+ *
+ * The table is made much larger than the CPU caches, so most probes miss.
+ * getAll() and putAll() are loops over get() and put() themselves, so
+ * expect a ratio near 1: the batch methods save the caller a loop and an
+ * allocation per key, not time. The two tables are built in alternating
+ * order from round to round, so neither always runs on a heap the other
+ * has already grown.
+ *
+ * Usage: java hashes.BatchLookupBenchmark [table size] [batch size]
+ */
+public class BatchLookupBenchmark {
+
+	// keeps the lookup loops from being optimized away
+	static volatile int sink;
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		int batch = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		Random random = new Random(11);
+
+		Integer[] keys = new Integer[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = random.nextInt();
+		int batches = Math.max(1, 2000000 / batch);
+		Integer[][] queries = new Integer[batches][batch];
+		for (int b = 0; b < batches; b++)
+			for (int j = 0; j < batch; j++)
+				queries[b][j] = random.nextInt(4) == 0 ? random.nextInt() : keys[random.nextInt(n)];
+		Integer[] out = new Integer[batch];
+
+		for (int round = 0; round < 4; round++) {
+			LinearProbingHashST<Integer, Integer> looped = null;
+			LinearProbingHashST<Integer, Integer> batched = null;
+			double putNanos = 0;
+			double putAllNanos = 0;
+			for (int k = 0; k < 2; k++) {
+				long start = System.nanoTime();
+				if ((k + round) % 2 == 0) {
+					looped = new LinearProbingHashST<Integer, Integer>();
+					for (int i = 0; i < n; i++)
+						looped.put(keys[i], i);
+					putNanos = (System.nanoTime() - start) / (double) n;
+				} else {
+					batched = new LinearProbingHashST<Integer, Integer>();
+					putAll(batched, keys, batch);
+					putAllNanos = (System.nanoTime() - start) / (double) n;
+				}
+			}
+
+			int found = 0;
+			long start = System.nanoTime();
+			for (Integer[] query : queries)
+				for (Integer key : query)
+					if (looped.get(key) != null)
+						found++;
+			double getNanos = (System.nanoTime() - start) / (double) (batches * batch);
+
+			int foundAll = 0;
+			start = System.nanoTime();
+			for (Integer[] query : queries) {
+				batched.getAll(query, out);
+				for (Integer v : out)
+					if (v != null)
+						foundAll++;
+			}
+			double getAllNanos = (System.nanoTime() - start) / (double) (batches * batch);
+			if (found != foundAll)
+				throw new IllegalStateException("get() found " + found + " keys, getAll() " + foundAll);
+			sink += found;
+
+			System.out.printf("%d keys, batches of %d: put %.1f ns, putAll %.1f ns (%.2fx), get %.1f ns, getAll %.1f ns (%.2fx) per key%n",
+					n, batch, putNanos, putAllNanos, putNanos / putAllNanos, getNanos, getAllNanos, getNanos / getAllNanos);
+		}
+	}
+
+	// inserts keys[i] with value i, batch keys at a time
+	private static void putAll(LinearProbingHashST<Integer, Integer> st, Integer[] keys, int batch) {
+		Integer[] keyBatch = new Integer[batch];
+		Integer[] valBatch = new Integer[batch];
+		for (int i = 0; i < keys.length; i += batch) {
+			int m = Math.min(batch, keys.length - i);
+			if (m < batch) {
+				keyBatch = new Integer[m];
+				valBatch = new Integer[m];
+			}
+			for (int j = 0; j < m; j++) {
+				keyBatch[j] = keys[i + j];
+				valBatch[j] = i + j;
+			}
+			st.putAll(keyBatch, valBatch);
+		}
+	}
+
+}
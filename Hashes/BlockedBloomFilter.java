@@ -0,0 +1,173 @@
+package hashes;
+
+/**
+ * Blocked Bloom filter over 32-bit hash codes.
+ *
+ * The bit array is split into 512-bit blocks, one cache line each. A hash
+ * code picks one block and sets k bits inside it, so add() and
+ * mightContain() touch a single cache line whatever k is. mightContain()
+ * never returns false for a hash that was added; it returns true for other
+ * hashes with a probability that depends on the bits per key, about 2% at
+ * 8 bits and 0.3% at 12.
+ *
+ * Bits cannot be cleared, so a table that deletes keys has to rebuild the
+ * filter from its remaining keys now and then. The filter also counts its
+ * queries, and callers report the false positives they find, so the
+ * observed rate can be compared with the estimate.
+ */
+public class BlockedBloomFilter {
+	private static final int BLOCK_LONGS = 8; // 512 bits
+
+	private final long[] bits;
+	private final int blocks;
+	private final int k; // bits set per key
+	private final int capacity; // keys the filter was sized for
+	private int added; // add() calls
+
+	private long queries; // mightContain() calls
+	private long negatives; // of which returned false
+	private long falsePositives; // reported by the caller
+
+	/**
+	 * Initializes an empty filter sized for expectedKeys keys.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if bitsPerKey is not between 1 and 64
+	 */
+	public BlockedBloomFilter(int expectedKeys, int bitsPerKey) {
+		if (bitsPerKey < 1 || bitsPerKey > 64)
+			throw new IllegalArgumentException("bits per key must be between 1 and 64");
+		capacity = Math.max(1, expectedKeys);
+		long m = (long) capacity * bitsPerKey;
+		blocks = (int) Math.min(Integer.MAX_VALUE / BLOCK_LONGS, Math.max(1, (m + 511) / 512));
+		bits = new long[blocks * BLOCK_LONGS];
+		k = Math.max(1, Math.min(16, (int) Math.round(bitsPerKey * Math.log(2))));
+	}
+
+	// mixes the hash code into 64 bits: the high half picks the block, the
+	// low half the bits within it
+	private static long mix(int h) {
+		long z = (h & 0xFFFFFFFFL) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 32)) * 0xD6E8FEB86659FD93L;
+		return z ^ (z >>> 32);
+	}
+
+	private int block(long z) {
+		return (int) (((z >>> 32) * blocks) >>> 32) * BLOCK_LONGS;
+	}
+
+	public void add(int h) {
+		long z = mix(h);
+		int base = block(z);
+		int a = (int) z;
+		int b = ((int) z >>> 16) | 1;
+		for (int i = 0; i < k; i++) {
+			int bit = (a + i * b) & 511;
+			bits[base + (bit >>> 6)] |= 1L << bit;
+		}
+		added++;
+	}
+
+	/**
+	 * Returns false if no key with this hash code was added; true means it
+	 * probably was.
+	 */
+	public boolean mightContain(int h) {
+		queries++;
+		long z = mix(h);
+		int base = block(z);
+		int a = (int) z;
+		int b = ((int) z >>> 16) | 1;
+		for (int i = 0; i < k; i++) {
+			int bit = (a + i * b) & 511;
+			if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0) {
+				negatives++;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Records that mightContain() returned true for a key that turned out to
+	 * be absent.
+	 */
+	public void falsePositive() {
+		falsePositives++;
+	}
+
+	/**
+	 * Returns the number of keys the filter was sized for; past it the false
+	 * positive rate climbs.
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of add() calls.
+	 */
+	public int added() {
+		return added;
+	}
+
+	public long sizeInBits() {
+		return 64L * bits.length;
+	}
+
+	/**
+	 * Returns the bits of filter per added key.
+	 */
+	public double bitsPerKey() {
+		return added == 0 ? sizeInBits() : sizeInBits() / (double) added;
+	}
+
+	/**
+	 * Returns the false positive rate expected from the share of bits set.
+	 */
+	public double estimatedFalsePositiveRate() {
+		long set = 0;
+		for (long word : bits)
+			set += Long.bitCount(word);
+		return Math.pow(set / (double) sizeInBits(), k);
+	}
+
+	/**
+	 * Returns the reported false positives over all queries for absent keys
+	 * (the false positives plus the negatives), or 0 before any. Unlike the
+	 * estimate, this includes hits on deleted keys the filter still holds.
+	 */
+	public double observedFalsePositiveRate() {
+		long absent = falsePositives + negatives;
+		return absent == 0 ? 0 : falsePositives / (double) absent;
+	}
+
+	public long queries() {
+		return queries;
+	}
+
+	public long negatives() {
+		return negatives;
+	}
+
+	public long falsePositives() {
+		return falsePositives;
+	}
+
+	/**
+	 * Copies the query counters of another filter, so they survive a
+	 * rebuild.
+	 */
+	void inheritCounters(BlockedBloomFilter other) {
+		queries = other.queries;
+		negatives = other.negatives;
+		falsePositives = other.falsePositives;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("BlockedBloomFilter(%d keys, %.1f bits/key, k=%d, estimated fpp %.4f, observed fpp %.4f)",
+				added, bitsPerKey(), k, estimatedFalsePositiveRate(), observedFalsePositiveRate());
+	}
+
+}
@@ -0,0 +1,266 @@
+package hashes;
+
+/**
+ * Cache holding at most a fixed number of entries, evicting by least recent
+ * use (LRU) or least frequent use (LFU).
+ *
+ * A HashMap indexes the entries, and each entry is a node of an intrusive
+ * doubly linked list, so get(), put() and eviction are O(1) with no scan. The
+ * lists hang off frequency buckets kept in ascending order of use count:
+ * in LFU mode a hit moves the entry to the front of the next bucket and the
+ * victim is the least recent entry of the lowest bucket; in LRU mode every
+ * entry stays in a single bucket and a hit just moves it to the front.
+ *
+ * An optional listener is told about every entry evicted for space, and
+ * the cache counts hits, misses and evictions.
+ */
+public class BoundedCache<K, V> {
+
+	public enum Policy {
+		LRU, LFU
+	}
+
+	/**
+	 * Receives the entries evicted to make room for new ones.
+	 */
+	public interface EvictionListener<K, V> {
+		void onEviction(K key, V value);
+	}
+
+	private static final class Node<K, V> {
+		final K key;
+		V value;
+		Node<K, V> prev, next;
+		Bucket<K, V> bucket;
+
+		Node(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	// entries used the same number of times, most recent first
+	private static final class Bucket<K, V> {
+		final int count;
+		final Node<K, V> head = new Node<K, V>(null, null); // sentinel
+		Bucket<K, V> prev, next;
+
+		Bucket(int count) {
+			this.count = count;
+			head.prev = head;
+			head.next = head;
+		}
+
+		boolean isEmpty() {
+			return head.next == head;
+		}
+
+		void addFirst(Node<K, V> x) {
+			x.bucket = this;
+			x.prev = head;
+			x.next = head.next;
+			head.next.prev = x;
+			head.next = x;
+		}
+	}
+
+	private final int capacity;
+	private final Policy policy;
+	private final EvictionListener<K, V> listener;
+	private final HashMap<K, Node<K, V>> index;
+	private final Bucket<K, V> buckets = new Bucket<K, V>(0); // sentinel of the bucket list
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public BoundedCache(int capacity, Policy policy) {
+		this(capacity, policy, null);
+	}
+
+	/**
+	 * Initializes an empty cache.
+	 *
+	 * @param listener
+	 *            told about every eviction, or null
+	 * @throws IllegalArgumentException
+	 *             if capacity is not positive or policy is null
+	 */
+	public BoundedCache(int capacity, Policy policy, EvictionListener<K, V> listener) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive");
+		if (policy == null)
+			throw new IllegalArgumentException("policy is null");
+		this.capacity = capacity;
+		this.policy = policy;
+		this.listener = listener;
+		index = new HashMap<K, Node<K, V>>((int) Math.min(1 << 30, capacity / 0.75 + 1));
+		buckets.prev = buckets;
+		buckets.next = buckets;
+	}
+
+	public int size() {
+		return index.size();
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public Policy policy() {
+		return policy;
+	}
+
+	/**
+	 * Returns the cached value of the key, or null, and counts a hit or a
+	 * miss. A hit makes the entry the most recently (and, for LFU, more
+	 * frequently) used.
+	 */
+	public V get(K key) {
+		if (key == null)
+			throw new IllegalArgumentException("key is null");
+		Node<K, V> x = index.get(key);
+		if (x == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		touch(x);
+		return x.value;
+	}
+
+	/**
+	 * Returns true if the key is cached, without counting or touching it.
+	 */
+	public boolean containsKey(K key) {
+		if (key == null)
+			throw new IllegalArgumentException("key is null");
+		return index.containsKey(key);
+	}
+
+	/**
+	 * Caches the value under the key and returns the previous value or null.
+	 * A new key evicts an entry first if the cache is full.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if key or value is null
+	 */
+	public V put(K key, V value) {
+		if (key == null || value == null)
+			throw new IllegalArgumentException("key and value must not be null");
+		Node<K, V> x = index.get(key);
+		if (x != null) {
+			V previous = x.value;
+			x.value = value;
+			touch(x);
+			return previous;
+		}
+		if (index.size() >= capacity)
+			evict();
+		x = new Node<K, V>(key, value);
+		index.put(key, x);
+		Bucket<K, V> first = buckets.next;
+		if (first == buckets || first.count != 1)
+			first = insertBucketAfter(buckets, 1);
+		first.addFirst(x);
+		return null;
+	}
+
+	/**
+	 * Removes the key and returns its value, or null; not counted as an
+	 * eviction.
+	 */
+	public V remove(K key) {
+		if (key == null)
+			throw new IllegalArgumentException("key is null");
+		Node<K, V> x = index.remove(key);
+		if (x == null)
+			return null;
+		unlink(x);
+		return x.value;
+	}
+
+	public void clear() {
+		index.clear();
+		buckets.prev = buckets;
+		buckets.next = buckets;
+	}
+
+	// records a use of the entry
+	private void touch(Node<K, V> x) {
+		Bucket<K, V> bucket = x.bucket;
+		if (policy == Policy.LRU || bucket.count == Integer.MAX_VALUE) {
+			unlinkNode(x);
+			bucket.addFirst(x);
+			return;
+		}
+		Bucket<K, V> next = bucket.next;
+		if (next == buckets || next.count != bucket.count + 1)
+			next = insertBucketAfter(bucket, bucket.count + 1);
+		unlink(x);
+		next.addFirst(x);
+	}
+
+	// drops the least recent entry of the lowest bucket
+	private void evict() {
+		Bucket<K, V> lowest = buckets.next;
+		Node<K, V> victim = lowest.head.prev;
+		index.remove(victim.key);
+		unlink(victim);
+		evictions++;
+		if (listener != null)
+			listener.onEviction(victim.key, victim.value);
+	}
+
+	private Bucket<K, V> insertBucketAfter(Bucket<K, V> b, int count) {
+		Bucket<K, V> n = new Bucket<K, V>(count);
+		n.prev = b;
+		n.next = b.next;
+		b.next.prev = n;
+		b.next = n;
+		return n;
+	}
+
+	private static <K, V> void unlinkNode(Node<K, V> x) {
+		x.prev.next = x.next;
+		x.next.prev = x.prev;
+	}
+
+	// unlinks the entry, and its bucket too if that leaves it empty
+	private static <K, V> void unlink(Node<K, V> x) {
+		unlinkNode(x);
+		Bucket<K, V> b = x.bucket;
+		if (b.isEmpty()) {
+			b.prev.next = b.next;
+			b.next.prev = b.prev;
+		}
+		x.bucket = null;
+	}
+
+	public long hitCount() {
+		return hits;
+	}
+
+	public long missCount() {
+		return misses;
+	}
+
+	public long evictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * Returns hits over all get() calls, or 0 before any.
+	 */
+	public double hitRate() {
+		long requests = hits + misses;
+		return requests == 0 ? 0 : hits / (double) requests;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("BoundedCache(%s, %d/%d entries, %d hits, %d misses, %d evictions)", policy, size(),
+				capacity, hits, misses, evictions);
+	}
+
+}
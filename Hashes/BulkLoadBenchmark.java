@@ -0,0 +1,47 @@
+package hashes;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares loading LinearProbingHashST with a loop of put() calls against
+ * bulkLoad(), which sizes the table once and places the pairs in parallel.
+ *
+ * The parallelism of the common fork-join pool can be set with
+ * -Djava.util.concurrent.ForkJoinPool.common.parallelism=N to see how the
+ * load scales with cores.
+ *
+ * Usage: java hashes.BulkLoadBenchmark [pairs]
+ */
+public class BulkLoadBenchmark {
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+		Random random = new Random(21);
+		Integer[] keys = new Integer[n];
+		Integer[] vals = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = random.nextInt();
+			vals[i] = i;
+		}
+
+		System.out.printf("%d pairs, parallelism %d%n", n, ForkJoinPool.getCommonPoolParallelism());
+		for (int round = 0; round < 3; round++) {
+			LinearProbingHashST<Integer, Integer> looped = new LinearProbingHashST<Integer, Integer>();
+			long start = System.nanoTime();
+			for (int i = 0; i < n; i++)
+				looped.put(keys[i], vals[i]);
+			long putMillis = (System.nanoTime() - start) / 1000000;
+
+			LinearProbingHashST<Integer, Integer> loaded = new LinearProbingHashST<Integer, Integer>();
+			start = System.nanoTime();
+			loaded.bulkLoad(keys, vals);
+			long bulkMillis = (System.nanoTime() - start) / 1000000;
+
+			if (looped.size() != loaded.size())
+				throw new IllegalStateException("sizes differ: " + looped.size() + " and " + loaded.size());
+			System.out.printf("put() loop %6d ms   bulkLoad() %6d ms%n", putMillis, bulkMillis);
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+package hashes;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays an access trace against WTinyLfuCache and BoundedCache (LRU and
+ * LFU) and prints the hit rate of each at several sizes.
+ *
+ * Every access is a get(); a miss is followed by a put() of the key, as a
+ * read-through cache would do. The trace file has one key per line, e.g. a
+ * column cut from an access log; without one the simulator generates a
+ * Zipf-distributed workload interrupted by long scans of keys that are read
+ * once.
+ *
+ * Usage: java hashes.CacheSimulator [trace file] [cache sizes...]
+ */
+public class CacheSimulator {
+
+	private static String[] readTrace(String file) throws IOException {
+		List<String> keys = new ArrayList<String>();
+		try (BufferedReader in = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+			for (String line = in.readLine(); line != null; line = in.readLine())
+				if (!line.isEmpty())
+					keys.add(line.trim());
+		}
+		return keys.toArray(new String[0]);
+	}
+
+	// Zipf(0.9) over 100,000 keys, with a scan of 20,000 new keys after every
+	// 50,000 accesses
+	private static String[] syntheticTrace(int length, Random random) {
+		int universe = 100000;
+		double[] cumulative = new double[universe];
+		double sum = 0;
+		for (int i = 0; i < universe; i++) {
+			sum += 1 / Math.pow(i + 1, 0.9);
+			cumulative[i] = sum;
+		}
+		String[] trace = new String[length];
+		int scanned = 0;
+		for (int i = 0; i < length; i++) {
+			if (i % 70000 >= 50000) {
+				trace[i] = "scan-" + scanned++;
+				continue;
+			}
+			double u = random.nextDouble() * sum;
+			int lo = 0, hi = universe - 1;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (cumulative[mid] < u)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			trace[i] = "key-" + lo;
+		}
+		return trace;
+	}
+
+	private static double replay(String[] trace, BoundedCache<String, String> cache) {
+		for (String key : trace)
+			if (cache.get(key) == null)
+				cache.put(key, key);
+		return cache.hitRate();
+	}
+
+	private static double replay(String[] trace, WTinyLfuCache<String, String> cache) {
+		for (String key : trace)
+			if (cache.get(key) == null)
+				cache.put(key, key);
+		return cache.hitRate();
+	}
+
+	public static void main(String[] args) throws IOException {
+		String[] trace;
+		int first;
+		if (args.length > 0 && !args[0].matches("\\d+")) {
+			trace = readTrace(args[0]);
+			first = 1;
+		} else {
+			trace = syntheticTrace(1000000, new Random(1));
+			first = 0;
+		}
+		int[] sizes;
+		if (args.length > first) {
+			sizes = new int[args.length - first];
+			for (int i = first; i < args.length; i++)
+				sizes[i - first] = Integer.parseInt(args[i]);
+		} else {
+			sizes = new int[] { 500, 2000, 10000 };
+		}
+
+		System.out.printf("%d accesses%n%10s %10s %10s %12s%n", trace.length, "size", "LRU", "LFU", "W-TinyLFU");
+		for (int size : sizes) {
+			double lru = replay(trace, new BoundedCache<String, String>(size, BoundedCache.Policy.LRU));
+			double lfu = replay(trace, new BoundedCache<String, String>(size, BoundedCache.Policy.LFU));
+			double tinyLfu = replay(trace, new WTinyLfuCache<String, String>(size));
+			System.out.printf("%10d %9.2f%% %9.2f%% %11.2f%%%n", size, 100 * lru, 100 * lfu, 100 * tinyLfu);
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+package hashes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns keys or values into bytes for a table snapshot and back.
+ *
+ * Every encoded value is stored with its length in front, so decode() is
+ * told how many bytes encode() wrote and must read exactly that many.
+ */
+public interface Codec<T> {
+
+	void encode(T value, DataOutput out) throws IOException;
+
+	T decode(DataInput in, int length) throws IOException;
+
+	/** UTF-8 bytes of the string */
+	Codec<String> STRING = new Codec<String>() {
+		public void encode(String value, DataOutput out) throws IOException {
+			out.write(value.getBytes(StandardCharsets.UTF_8));
+		}
+
+		public String decode(DataInput in, int length) throws IOException {
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	};
+
+	/** four bytes, big-endian */
+	Codec<Integer> INTEGER = new Codec<Integer>() {
+		public void encode(Integer value, DataOutput out) throws IOException {
+			out.writeInt(value);
+		}
+
+		public Integer decode(DataInput in, int length) throws IOException {
+			return in.readInt();
+		}
+	};
+
+	/** eight bytes, big-endian */
+	Codec<Long> LONG = new Codec<Long>() {
+		public void encode(Long value, DataOutput out) throws IOException {
+			out.writeLong(value);
+		}
+
+		public Long decode(DataInput in, int length) throws IOException {
+			return in.readLong();
+		}
+	};
+
+}
@@ -0,0 +1,317 @@
+package hashes;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe map from int keys to long counters, with no boxing.
+ *
+ * The keys are spread over a fixed number of segments, each an open
+ * addressing table of primitive atomic arrays: keys in an AtomicIntegerArray,
+ * counts in an AtomicLongArray. Incrementing or reading a key that is
+ * already present takes no lock: the count is bumped with a compare-and-set.
+ * When that compare-and-set loses to another thread, the slot is promoted to
+ * a LongAdder cell and every later increment of that key goes to the cell,
+ * so a hot key spreads its updates over striped cells instead of spinning
+ * on one word. Adding a new key, and doubling a segment once it is 2/3
+ * full, lock only that segment.
+ *
+ * A resize freezes each old slot before copying it: the cell reference is
+ * swapped for MOVED_CELL and the count for MOVED, so an increment that
+ * races with the copy either lands before the freeze and is copied, goes to
+ * the cell, which moves to the new table as is, or sees the freeze and
+ * waits for the segment lock and retries on the new table. No update is
+ * lost. Key 0 marks an empty slot, so its counter lives in a field of its
+ * own.
+ *
+ * Keys are never removed. drain() hands every non-zero counter to a Sink
+ * and subtracts what it handed over, so each increment is reported by
+ * exactly one drain even while other threads keep counting.
+ */
+public class ConcurrentIntCounterMap {
+	private static final int DEFAULT_SEGMENTS = 64;
+	private static final int INIT_SEGMENT_CAPACITY = 16;
+	private static final int MAX_SEGMENT_CAPACITY = 1 << 30;
+
+	private static final long MOVED = Long.MIN_VALUE; // count of a slot copied by a resize
+	private static final LongAdder MOVED_CELL = new LongAdder(); // cell of a slot copied by a resize
+
+	/**
+	 * Receives the counters of a drain.
+	 */
+	public interface Sink {
+		void accept(int key, long count);
+	}
+
+	private static final class Table {
+		final AtomicIntegerArray keys;
+		final AtomicLongArray counts;
+		final AtomicReferenceArray<LongAdder> cells; // null until the slot gets hot
+		final int mask;
+
+		Table(int capacity) {
+			keys = new AtomicIntegerArray(capacity);
+			counts = new AtomicLongArray(capacity);
+			cells = new AtomicReferenceArray<LongAdder>(capacity);
+			mask = capacity - 1;
+		}
+	}
+
+	// a segment lock together with its table and number of keys
+	private static final class Segment extends ReentrantLock {
+		private static final long serialVersionUID = 1L;
+		volatile Table table = new Table(INIT_SEGMENT_CAPACITY);
+		volatile int count; // written only while holding the lock
+	}
+
+	private final Segment[] segments;
+	private final int segmentShift; // 32 - log2(segments)
+
+	private final LongAdder zeroCount = new LongAdder(); // counter of key 0
+	private volatile boolean zeroPresent;
+
+	private final LongAdder promotions = new LongAdder(); // slots turned into cells
+
+	public ConcurrentIntCounterMap() {
+		this(DEFAULT_SEGMENTS);
+	}
+
+	/**
+	 * Initializes an empty map.
+	 *
+	 * @param concurrencyLevel
+	 *            the number of segments, rounded up to a power of two
+	 * @throws IllegalArgumentException
+	 *             if concurrencyLevel is not positive
+	 */
+	public ConcurrentIntCounterMap(int concurrencyLevel) {
+		if (concurrencyLevel <= 0)
+			throw new IllegalArgumentException("concurrency level must be positive");
+		int s = 1;
+		while (s < concurrencyLevel && s < 1 << 16)
+			s <<= 1;
+		segments = new Segment[s];
+		for (int i = 0; i < s; i++)
+			segments[i] = new Segment();
+		segmentShift = 32 - Integer.numberOfTrailingZeros(s);
+	}
+
+	private static int spread(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	// the segment takes the high bits of the hash, the slot the low ones
+	private Segment segmentFor(int h) {
+		return segments.length == 1 ? segments[0] : segments[h >>> segmentShift];
+	}
+
+	// slot of the key in the table, or -1
+	private static int indexOf(Table t, int key, int h) {
+		for (int i = h & t.mask;; i = (i + 1) & t.mask) {
+			int k = t.keys.get(i);
+			if (k == key)
+				return i;
+			if (k == 0)
+				return -1;
+		}
+	}
+
+	public void increment(int key) {
+		increment(key, 1);
+	}
+
+	/**
+	 * Adds delta to the counter of the key, creating it at 0 first if needed.
+	 */
+	public void increment(int key, long delta) {
+		if (key == 0) {
+			if (!zeroPresent)
+				zeroPresent = true;
+			zeroCount.add(delta);
+			return;
+		}
+		int h = spread(key);
+		Segment s = segmentFor(h);
+		for (;;) {
+			Table t = s.table;
+			int i = indexOf(t, key, h);
+			if (i < 0) {
+				insert(s, key, h);
+				continue;
+			}
+			if (add(t, i, delta))
+				return;
+			awaitResize(s);
+		}
+	}
+
+	// adds delta to slot i, or returns false if a resize has frozen it
+	private boolean add(Table t, int i, long delta) {
+		LongAdder cell = t.cells.get(i);
+		if (cell == null) {
+			long c = t.counts.get(i);
+			if (c == MOVED)
+				return false;
+			if (t.counts.compareAndSet(i, c, c + delta))
+				return true;
+			// contended: give the slot a cell
+			if (t.cells.compareAndSet(i, null, new LongAdder()))
+				promotions.increment();
+			cell = t.cells.get(i);
+		}
+		if (cell == MOVED_CELL)
+			return false;
+		cell.add(delta);
+		return true;
+	}
+
+	// waits for the resize that froze a slot of the segment to finish
+	private static void awaitResize(Segment s) {
+		s.lock();
+		s.unlock();
+	}
+
+	// adds the key at 0 unless another thread got there first
+	private void insert(Segment s, int key, int h) {
+		s.lock();
+		try {
+			Table t = s.table;
+			if (indexOf(t, key, h) >= 0)
+				return;
+			if (3 * (s.count + 1) > 2 * (t.mask + 1) && t.mask + 1 < MAX_SEGMENT_CAPACITY)
+				t = resize(s, t);
+			int i = h & t.mask;
+			while (t.keys.get(i) != 0)
+				i = (i + 1) & t.mask;
+			t.keys.set(i, key);
+			s.count++;
+		} finally {
+			s.unlock();
+		}
+	}
+
+	// doubles the segment's table; the caller holds the segment lock, so no
+	// key is added meanwhile, and increments are kept by freezing each slot
+	private static Table resize(Segment s, Table old) {
+		Table t = new Table(2 * (old.mask + 1));
+		for (int i = 0; i <= old.mask; i++) {
+			int key = old.keys.get(i);
+			if (key == 0)
+				continue;
+			LongAdder cell = old.cells.getAndSet(i, MOVED_CELL);
+			long count = old.counts.getAndSet(i, MOVED);
+			int j = spread(key) & t.mask;
+			while (t.keys.get(j) != 0)
+				j = (j + 1) & t.mask;
+			t.keys.set(j, key);
+			t.counts.set(j, count);
+			if (cell != null)
+				t.cells.set(j, cell);
+		}
+		s.table = t;
+		return t;
+	}
+
+	/**
+	 * Returns the counter of the key, or 0 if it was never incremented.
+	 */
+	public long get(int key) {
+		if (key == 0)
+			return zeroCount.sum();
+		int h = spread(key);
+		Segment s = segmentFor(h);
+		for (;;) {
+			Table t = s.table;
+			int i = indexOf(t, key, h);
+			if (i < 0)
+				return 0;
+			LongAdder cell = t.cells.get(i);
+			long c = t.counts.get(i);
+			if (c != MOVED && cell != MOVED_CELL)
+				return cell == null ? c : c + cell.sum();
+			awaitResize(s);
+		}
+	}
+
+	public boolean containsKey(int key) {
+		if (key == 0)
+			return zeroPresent;
+		int h = spread(key);
+		return indexOf(segmentFor(h).table, key, h) >= 0;
+	}
+
+	/**
+	 * Returns the number of keys.
+	 */
+	public int size() {
+		int n = zeroPresent ? 1 : 0;
+		for (Segment s : segments)
+			n += s.count;
+		return n;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Returns the number of slots promoted to LongAdder cells so far.
+	 */
+	public long promotions() {
+		return promotions.sum();
+	}
+
+	/**
+	 * Passes every non-zero counter to the sink and subtracts the amount
+	 * passed, leaving the keys in place. Increments made during the drain
+	 * are either included or left for the next drain.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if sink is null
+	 */
+	public void drain(Sink sink) {
+		if (sink == null)
+			throw new IllegalArgumentException("sink is null");
+		if (zeroPresent) {
+			long c = zeroCount.sum();
+			if (c != 0) {
+				zeroCount.add(-c);
+				sink.accept(0, c);
+			}
+		}
+		for (Segment s : segments) {
+			// the lock keeps a resize from freezing slots under the drain
+			s.lock();
+			try {
+				Table t = s.table;
+				for (int i = 0; i <= t.mask; i++) {
+					int key = t.keys.get(i);
+					if (key == 0)
+						continue;
+					long c = t.counts.getAndSet(i, 0);
+					LongAdder cell = t.cells.get(i);
+					if (cell != null) {
+						long sum = cell.sum();
+						cell.add(-sum);
+						c += sum;
+					}
+					if (c != 0)
+						sink.accept(key, c);
+				}
+			} finally {
+				s.unlock();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ConcurrentIntCounterMap(%d keys, %d segments, %d hot slots)", size(), segments.length,
+				promotions());
+	}
+
+}
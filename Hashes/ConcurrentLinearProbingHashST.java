@@ -0,0 +1,361 @@
+package hashes;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import queue.Queue;
+
+/**
+ * Lock-free collision resolution by linear probing (open addressing)
+ *
+ * Keys and values live in atomic slot arrays and every change is a single
+ * compare-and-set, so no thread ever blocks or parks. A key slot is claimed
+ * once and never cleared; deleting a key swaps its value for a tombstone.
+ *
+ * When the table fills up a next table is attached and the old one is
+ * migrated slot by slot. Copying a slot first freezes its value by wrapping
+ * it in a Prime, then inserts it into the next table and marks the old slot
+ * MOVED. Any thread that runs into a migration copies a chunk of slots
+ * before carrying on. Once every chunk has been handed out, a helper that
+ * finds the migration unfinished copies whatever slots are left itself,
+ * so the resize finishes even if the threads holding chunks stall; a slot
+ * is counted as done by the one call that marks it MOVED or closes it.
+ * Writers reaching a frozen or moved slot help copy it and then retry in
+ * the next table; readers follow the same path, so a value written to the
+ * next table is never shadowed by a stale one.
+ */
+public class ConcurrentLinearProbingHashST<Key, Value> {
+	private static final int INIT_CAPACITY = 16;
+	private static final int COPY_CHUNK = 64; // slots copied per helping step
+
+	private static final Object TOMBSTONE = new Object(); // value of a deleted key
+	private static final Object MOVED = new Object(); // value once copied to the next table
+	private static final Object DEAD_KEY = new Object(); // empty key slot closed by a copy
+
+	// a value frozen while its slot is copied to the next table
+	private static final class Prime {
+		final Object val;
+
+		Prime(Object val) {
+			this.val = val;
+		}
+	}
+
+	private static final class Table {
+		final AtomicReferenceArray<Object> keys;
+		final AtomicReferenceArray<Object> vals;
+		final int mask;
+		final AtomicInteger claimed = new AtomicInteger(); // key slots in use
+		final AtomicReference<Table> next = new AtomicReference<Table>();
+		final AtomicInteger copyIndex = new AtomicInteger(); // next chunk to hand out
+		final AtomicInteger copyDone = new AtomicInteger(); // slots marked MOVED or DEAD_KEY
+
+		Table(int capacity) {
+			keys = new AtomicReferenceArray<Object>(capacity);
+			vals = new AtomicReferenceArray<Object>(capacity);
+			mask = capacity - 1;
+		}
+
+		int capacity() {
+			return mask + 1;
+		}
+	}
+
+	// what putVal() does with the slot of the key
+	private static final int PUT = 0;
+	private static final int DELETE = 1;
+	private static final int COPY = 2; // insert only if absent, no size change
+
+	private final AtomicReference<Table> root;
+	private final LongAdder size = new LongAdder();
+
+	public ConcurrentLinearProbingHashST() {
+		this(INIT_CAPACITY);
+	}
+
+	/**
+	 * Initializes an empty symbol table with the specified initial capacity,
+	 * rounded up to a power of two.
+	 */
+	public ConcurrentLinearProbingHashST(int capacity) {
+		int m = 2;
+		while (m < capacity && m < 1 << 30)
+			m <<= 1;
+		root = new AtomicReference<Table>(new Table(m));
+	}
+
+	/**
+	 * Returns the number of key-value pairs; exact only while no writer is
+	 * running.
+	 */
+	public int size() {
+		return (int) Math.max(0, Math.min(size.sum(), Integer.MAX_VALUE));
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Returns true if this symbol table contains the specified key.
+	 */
+	public boolean contains(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to contains() is null");
+		return get(key) != null;
+	}
+
+	// spread hash code of the key
+	private static int hash(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean isLive(Object v) {
+		return v != null && v != TOMBSTONE;
+	}
+
+	/**
+	 * Returns the value associated with the specified key.
+	 */
+	@SuppressWarnings("unchecked")
+	public Value get(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to get() is null");
+		int h = hash(key);
+		Table t = root.get();
+		outer: for (;;) {
+			Table next = t.next.get();
+			int mask = t.mask;
+			int i = h & mask;
+			for (int probes = 0; probes <= mask; probes++, i = (i + 1) & mask) {
+				Object k = t.keys.get(i);
+				if (k == null || k == DEAD_KEY)
+					break;
+				if (!key.equals(k))
+					continue;
+				Object v = t.vals.get(i);
+				if (v instanceof Prime || v == MOVED) {
+					copySlot(t, i);
+					t = t.next.get();
+					continue outer;
+				}
+				if (isLive(v))
+					return (Value) v;
+				break;
+			}
+			// not here; a migration may have placed it in the next table
+			if (next == null)
+				next = t.next.get();
+			if (next == null)
+				return null;
+			helpCopy(t);
+			t = next;
+		}
+	}
+
+	/**
+	 * Inserts the specified key-value pair into the symbol table, overwriting
+	 * the old value with the new value if the symbol table already contains the
+	 * specified key. Deletes the specified key (and its associated value) from
+	 * this symbol table if the specified value is null.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if key is null
+	 */
+	public void put(Key key, Value val) {
+		if (key == null)
+			throw new IllegalArgumentException("first argument to put() is null");
+		if (val == null) {
+			delete(key);
+			return;
+		}
+		putVal(root.get(), key, hash(key), val, PUT);
+	}
+
+	/**
+	 * Removes the specified key and its associated value from this symbol table
+	 * (if the key is in this symbol table).
+	 */
+	public void delete(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to delete() is null");
+		putVal(root.get(), key, hash(key), TOMBSTONE, DELETE);
+	}
+
+	private void putVal(Table t, Object key, int h, Object val, int mode) {
+		outer: for (;;) {
+			// read before probing: once a next table exists, keys missing
+			// here must be written there, never claimed here
+			Table next = t.next.get();
+			int mask = t.mask;
+			int i = h & mask;
+			for (int probes = 0;; probes++, i = (i + 1) & mask) {
+				if (probes > mask) {
+					t = startResize(t);
+					continue outer;
+				}
+				Object k = t.keys.get(i);
+				// a closed slot was empty when copied, so the key is not past it
+				if (k == DEAD_KEY || (k == null && next != null)) {
+					next = t.next.get();
+					helpCopy(t);
+					t = next;
+					continue outer;
+				}
+				if (k == null) {
+					if (mode == DELETE)
+						return;
+					if (t.claimed.get() >= t.capacity() / 2) {
+						t = startResize(t);
+						continue outer;
+					}
+					if (t.keys.compareAndSet(i, null, key)) {
+						t.claimed.incrementAndGet();
+						break;
+					}
+					k = t.keys.get(i);
+					if (k == DEAD_KEY) {
+						t = t.next.get();
+						continue outer;
+					}
+				}
+				if (key.equals(k))
+					break;
+			}
+
+			// slot i holds the key; if a migration started meanwhile the
+			// slot moves first and the write goes to the next table
+			if (t.next.get() != null) {
+				copySlot(t, i);
+				helpCopy(t);
+				t = t.next.get();
+				continue;
+			}
+			for (;;) {
+				Object v = t.vals.get(i);
+				if (v instanceof Prime || v == MOVED) {
+					copySlot(t, i);
+					t = t.next.get();
+					continue outer;
+				}
+				if (mode == COPY && v != null)
+					return; // someone else already copied it
+				if (mode == DELETE && !isLive(v))
+					return;
+				if (t.vals.compareAndSet(i, v, val)) {
+					if (mode == PUT && !isLive(v))
+						size.increment();
+					else if (mode == DELETE)
+						size.decrement();
+					return;
+				}
+			}
+		}
+	}
+
+	// attaches a next table to t unless one exists, and returns the next table
+	private Table startResize(Table t) {
+		Table next = t.next.get();
+		if (next != null)
+			return next;
+		long live = size.sum();
+		int capacity = t.capacity();
+		// grow if live keys fill the table, otherwise just drop the tombstones
+		if (live * 4 >= capacity && capacity < 1 << 30)
+			capacity *= 2;
+		t.next.compareAndSet(null, new Table(capacity));
+		return t.next.get();
+	}
+
+	// copies one chunk of t, or every slot left once all chunks are handed
+	// out, and retires t once all slots are done
+	private void helpCopy(Table t) {
+		int capacity = t.capacity();
+		int start = t.copyIndex.get() < capacity ? t.copyIndex.getAndAdd(COPY_CHUNK) : capacity;
+		if (start < capacity) {
+			int end = Math.min(capacity, start + COPY_CHUNK);
+			for (int i = start; i < end; i++)
+				copySlot(t, i);
+		} else {
+			// a chunk owner may have stalled; copySlot() is idempotent, so
+			// finish its slots rather than wait for it
+			for (int i = 0; i < capacity && t.copyDone.get() < capacity; i++)
+				copySlot(t, i);
+		}
+		promote();
+	}
+
+	// advances root past every table whose migration has finished
+	private void promote() {
+		for (;;) {
+			Table r = root.get();
+			Table next = r.next.get();
+			if (next == null || r.copyDone.get() < r.capacity())
+				return;
+			root.compareAndSet(r, next);
+		}
+	}
+
+	// moves slot i of t into t's next table; safe to call more than once,
+	// and only the call that finishes the slot counts it in copyDone
+	private void copySlot(Table t, int i) {
+		Object k = t.keys.get(i);
+		if (k == null) {
+			if (t.keys.compareAndSet(i, null, DEAD_KEY)) {
+				t.copyDone.incrementAndGet();
+				return;
+			}
+			k = t.keys.get(i);
+		}
+		if (k == DEAD_KEY)
+			return;
+
+		Prime frozen;
+		for (;;) {
+			Object v = t.vals.get(i);
+			if (v == MOVED)
+				return;
+			if (v instanceof Prime) {
+				frozen = (Prime) v;
+				break;
+			}
+			Prime p = new Prime(v);
+			if (t.vals.compareAndSet(i, v, p)) {
+				frozen = p;
+				break;
+			}
+		}
+		if (isLive(frozen.val))
+			putVal(t.next.get(), k, hash(k), frozen.val, COPY);
+		if (t.vals.compareAndSet(i, frozen, MOVED))
+			t.copyDone.incrementAndGet();
+	}
+
+	/**
+	 * Returns all keys in this symbol table as an Iterable. Finishes any
+	 * migration in progress first; the result is weakly consistent with
+	 * concurrent writers.
+	 */
+	@SuppressWarnings("unchecked")
+	public Iterable<Key> keys() {
+		for (;;) {
+			Table t = root.get();
+			if (t.next.get() != null) {
+				helpCopy(t);
+				continue;
+			}
+			Queue<Key> queue = new Queue<Key>();
+			for (int i = 0; i <= t.mask; i++) {
+				Object k = t.keys.get(i);
+				if (k != null && k != DEAD_KEY && isLive(t.vals.get(i)))
+					queue.enqueue((Key) k);
+			}
+			if (t.next.get() == null)
+				return queue;
+		}
+	}
+
+}
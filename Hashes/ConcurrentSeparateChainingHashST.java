@@ -0,0 +1,256 @@
+package hashes;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import queue.Queue;
+
+/**
+ * Thread-safe collision resolution by chaining (closed addressing)
+ *
+ * Writers lock one of a fixed number of stripes. Bucket i belongs to stripe
+ * i % stripes, and since the table length is a power of two no smaller than
+ * the stripe count, a key keeps its stripe when the table doubles. Readers
+ * take no lock: buckets are read through an AtomicReferenceArray and the
+ * chain links and values are volatile, so get() sees a consistent chain even
+ * while a writer relinks it.
+ *
+ * Each stripe keeps its own pair count, so there is no shared counter for
+ * writers to fight over; size() adds the stripe counts up. A resize locks
+ * every stripe, copies the chains into a new table and leaves a forwarding
+ * node in each old bucket, so readers never wait for it and readers that
+ * still hold the old table follow the forwarding node to the new one.
+ */
+public class ConcurrentSeparateChainingHashST<Key, Value> {
+	private static final int DEFAULT_STRIPES = 64;
+	private static final int INIT_CAPACITY = 1024;
+	private static final int MAX_CAPACITY = 1 << 30;
+	private static final int MAX_AVG_CHAIN = 2; // resize once chains average this
+
+	private static final int MOVED = -1; // hash of a forwarding node
+
+	private static class Node {
+		final int hash;
+		final Object key;
+		volatile Object val;
+		volatile Node next;
+
+		Node(int hash, Object key, Object val, Node next) {
+			this.hash = hash;
+			this.key = key;
+			this.val = val;
+			this.next = next;
+		}
+	}
+
+	// left in an old bucket once its chain has been copied to the next table
+	private static final class ForwardingNode extends Node {
+		final AtomicReferenceArray<Node> nextTable;
+
+		ForwardingNode(AtomicReferenceArray<Node> nextTable) {
+			super(MOVED, null, null, null);
+			this.nextTable = nextTable;
+		}
+	}
+
+	// a stripe lock together with the number of pairs in its buckets
+	private static final class Stripe extends ReentrantLock {
+		private static final long serialVersionUID = 1L;
+		volatile int count; // written only while holding the lock
+	}
+
+	private volatile AtomicReferenceArray<Node> table;
+	private final Stripe[] stripes;
+	private final int stripeMask;
+
+	public ConcurrentSeparateChainingHashST() {
+		this(INIT_CAPACITY, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * Initializes an empty symbol table.
+	 *
+	 * @param capacity
+	 *            the initial number of buckets
+	 * @param concurrencyLevel
+	 *            the number of lock stripes, rounded up to a power of two
+	 * @throws IllegalArgumentException
+	 *             if either argument is not positive
+	 */
+	public ConcurrentSeparateChainingHashST(int capacity, int concurrencyLevel) {
+		if (capacity <= 0 || concurrencyLevel <= 0)
+			throw new IllegalArgumentException("capacity and concurrency level must be positive");
+		int s = 1;
+		while (s < concurrencyLevel && s < 1 << 16)
+			s <<= 1;
+		int m = s;
+		while (m < capacity && m < MAX_CAPACITY)
+			m <<= 1;
+		stripes = new Stripe[s];
+		for (int i = 0; i < s; i++)
+			stripes[i] = new Stripe();
+		stripeMask = s - 1;
+		table = new AtomicReferenceArray<Node>(m);
+	}
+
+	// spread hash code, never negative so it cannot be mistaken for MOVED
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		return (h ^ (h >>> 16)) & 0x7fffffff;
+	}
+
+	/**
+	 * Returns the number of key-value pairs. The result is exact only while
+	 * no writer is running.
+	 */
+	public int size() {
+		long n = 0;
+		for (Stripe stripe : stripes)
+			n += stripe.count;
+		return (int) Math.min(n, Integer.MAX_VALUE);
+	}
+
+	public boolean isEmpty() {
+		for (Stripe stripe : stripes)
+			if (stripe.count != 0)
+				return false;
+		return true;
+	}
+
+	// is the key in the symbol table?
+	public boolean contains(Key key) {
+		return get(key) != null;
+	}
+
+	// return value associated with key, null if no such key; never locks
+	@SuppressWarnings("unchecked")
+	public Value get(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to get() is null");
+		int h = hash(key);
+		AtomicReferenceArray<Node> t = table;
+		Node x = t.get(h & (t.length() - 1));
+		while (x != null) {
+			if (x.hash == MOVED) {
+				t = ((ForwardingNode) x).nextTable;
+				x = t.get(h & (t.length() - 1));
+				continue;
+			}
+			if (x.hash == h && key.equals(x.key))
+				return (Value) x.val;
+			x = x.next;
+		}
+		return null;
+	}
+
+	// insert key-value pair into the table
+	public void put(Key key, Value val) {
+		if (key == null)
+			throw new IllegalArgumentException("first argument to put() is null");
+		if (val == null) {
+			delete(key);
+			return;
+		}
+		int h = hash(key);
+		Stripe stripe = stripes[h & stripeMask];
+		boolean grow;
+		stripe.lock();
+		try {
+			// re-read under the lock: a resize holds every stripe lock
+			AtomicReferenceArray<Node> t = table;
+			int i = h & (t.length() - 1);
+			Node first = t.get(i);
+			for (Node x = first; x != null; x = x.next) {
+				if (x.hash == h && key.equals(x.key)) {
+					x.val = val;
+					return;
+				}
+			}
+			t.set(i, new Node(h, key, val, first));
+			int count = stripe.count + 1;
+			stripe.count = count;
+			grow = count > (t.length() / stripes.length) * MAX_AVG_CHAIN && t.length() < MAX_CAPACITY;
+		} finally {
+			stripe.unlock();
+		}
+		if (grow)
+			resize();
+	}
+
+	// delete key (and associated value)
+	public void delete(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to delete() is null");
+		int h = hash(key);
+		Stripe stripe = stripes[h & stripeMask];
+		stripe.lock();
+		try {
+			AtomicReferenceArray<Node> t = table;
+			int i = h & (t.length() - 1);
+			Node prev = null;
+			for (Node x = t.get(i); x != null; prev = x, x = x.next) {
+				if (x.hash == h && key.equals(x.key)) {
+					// readers already on x still reach the rest of the chain
+					if (prev == null)
+						t.set(i, x.next);
+					else
+						prev.next = x.next;
+					stripe.count = stripe.count - 1;
+					return;
+				}
+			}
+		} finally {
+			stripe.unlock();
+		}
+	}
+
+	// doubles the table; the caller must not hold a stripe lock
+	private void resize() {
+		AtomicReferenceArray<Node> old = table;
+		for (Stripe stripe : stripes)
+			stripe.lock();
+		try {
+			if (table != old)
+				return; // another writer got here first
+			int n = old.length();
+			AtomicReferenceArray<Node> t = new AtomicReferenceArray<Node>(2 * n);
+			ForwardingNode forward = new ForwardingNode(t);
+			for (int i = 0; i < n; i++) {
+				// copy rather than relink, readers may still walk the old chain
+				Node lo = null, hi = null;
+				for (Node x = old.get(i); x != null; x = x.next) {
+					if ((x.hash & n) == 0)
+						lo = new Node(x.hash, x.key, x.val, lo);
+					else
+						hi = new Node(x.hash, x.key, x.val, hi);
+				}
+				t.set(i, lo);
+				t.set(i + n, hi);
+			}
+			table = t;
+			for (int i = 0; i < n; i++)
+				old.set(i, forward);
+		} finally {
+			for (Stripe stripe : stripes)
+				stripe.unlock();
+		}
+	}
+
+	// return all keys as an Iterable; weakly consistent, never locks
+	@SuppressWarnings("unchecked")
+	public Iterable<Key> keys() {
+		Queue<Key> queue = new Queue<Key>();
+		AtomicReferenceArray<Node> t = table;
+		for (int i = 0; i < t.length(); i++) {
+			for (Node x = t.get(i); x != null; x = x.next) {
+				if (x.hash == MOVED) {
+					// the table was replaced while we were walking it
+					return keys();
+				}
+				queue.enqueue((Key) x.key);
+			}
+		}
+		return queue;
+	}
+
+}
@@ -0,0 +1,68 @@
+package hashes;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures increments per second of ConcurrentIntCounterMap against a
+ * ConcurrentHashMap of boxed keys and LongAdder values, with several threads
+ * counting a Zipf-like mix of event IDs in which a few IDs are hot.
+ *
+ * Usage: java hashes.CounterMapBenchmark [threads] [increments per thread]
+ */
+public class CounterMapBenchmark {
+
+	interface Counter {
+		void increment(int key);
+	}
+
+	private static int[] events(int n, long seed) {
+		Random random = new Random(seed);
+		int[] events = new int[n];
+		for (int i = 0; i < n; i++) {
+			// half the events hit 16 hot IDs, the rest spread over 1M
+			events[i] = random.nextBoolean() ? random.nextInt(16) : random.nextInt(1 << 20);
+		}
+		return events;
+	}
+
+	private static double run(int threads, int[][] events, Counter counter) throws InterruptedException {
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			int[] mine = events[t];
+			workers[t] = new Thread(() -> {
+				for (int key : mine)
+					counter.increment(key);
+			});
+		}
+		long start = System.nanoTime();
+		for (Thread w : workers)
+			w.start();
+		for (Thread w : workers)
+			w.join();
+		long total = (long) threads * events[0].length;
+		return total / ((System.nanoTime() - start) / 1e9);
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int n = args.length > 1 ? Integer.parseInt(args[1]) : 5000000;
+		int[][] events = new int[threads][];
+		for (int t = 0; t < threads; t++)
+			events[t] = events(n, t);
+
+		System.out.printf("%d threads, %d increments each%n", threads, n);
+		for (int round = 0; round < 3; round++) {
+			ConcurrentIntCounterMap counters = new ConcurrentIntCounterMap();
+			double primitive = run(threads, events, counters::increment);
+
+			ConcurrentHashMap<Integer, LongAdder> boxed = new ConcurrentHashMap<Integer, LongAdder>();
+			double reference = run(threads, events, key -> boxed.computeIfAbsent(key, k -> new LongAdder()).increment());
+
+			System.out.printf("ConcurrentIntCounterMap %6.1f M/s   ConcurrentHashMap+LongAdder %6.1f M/s   (%s)%n",
+					primitive / 1e6, reference / 1e6, counters);
+		}
+	}
+
+}
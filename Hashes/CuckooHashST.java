@@ -0,0 +1,422 @@
+package hashes;
+
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+
+import queue.Queue;
+
+/**
+ * Collision resolution by bucketized cuckoo hashing.
+ *
+ * Slots are grouped into buckets of four, and every key may live in one of
+ * two buckets chosen by two independent hash functions. get() therefore
+ * looks at no more than eight slots, plus a stash of at most a few entries,
+ * however full the table is or how keys cluster. The hash codes of a bucket
+ * sit in four consecutive ints, so a lookup reads at most two small spans of
+ * the hash array, and equals() only runs on a hash match.
+ *
+ * put() places a key in a free slot of either bucket. When both are full it
+ * evicts a random resident, which moves to its own other bucket, and so on
+ * for up to MAX_KICKS steps. A key still homeless after that goes to the
+ * stash. Once the stash overflows, the table is rebuilt with new hash
+ * functions, doubling its size if it is at least half full. The table
+ * doubles anyway once it is MAX_LOAD full, where kick chains get long.
+ */
+public class CuckooHashST<Key, Value> {
+	private static final int SLOTS = 4; // slots per bucket
+	private static final int INIT_BUCKETS = 2;
+	private static final double MAX_LOAD = 0.9;
+	private static final int MAX_KICKS = 256; // evictions before stashing
+	private static final int STASH_SIZE = 4; // stash entries before a rebuild
+
+	private static final int C1 = 0x9E3779B9; // multipliers of the two hash functions
+	private static final int C2 = 0x85EBCA6B;
+
+	private int numberOfPairs; // number of key-value pairs
+	private int buckets; // number of buckets, a power of two
+	private int shift; // 32 - log2(buckets)
+	private int seed; // changes on every rebuild
+	private Key[] keys; // the keys, SLOTS per bucket
+	private Value[] vals; // the values
+	private int[] hashes; // hash code of each key
+
+	private Key[] stashKeys; // keys no bucket had room for
+	private Value[] stashVals;
+	private int[] stashHashes;
+	private int stashCount; // entries in the stash
+	private int stashLimit = STASH_SIZE; // stash size that triggers a rebuild
+	private int modCount; // structural modifications, for fail-fast walks
+
+	private int random = 0x2545F491; // xorshift state for choosing victims
+
+	public CuckooHashST() {
+		this(INIT_BUCKETS * SLOTS);
+	}
+
+	/**
+	 * Initializes an empty symbol table that holds capacity pairs without
+	 * resizing.
+	 */
+	public CuckooHashST(int capacity) {
+		int b = INIT_BUCKETS;
+		while (b * SLOTS * MAX_LOAD < capacity && b < 1 << 28)
+			b <<= 1;
+		allocate(b);
+		seed = ThreadLocalRandom.current().nextInt();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void allocate(int b) {
+		buckets = b;
+		shift = 32 - Integer.numberOfTrailingZeros(b);
+		keys = (Key[]) new Object[b * SLOTS];
+		vals = (Value[]) new Object[b * SLOTS];
+		hashes = new int[b * SLOTS];
+		stashKeys = (Key[]) new Object[STASH_SIZE];
+		stashVals = (Value[]) new Object[STASH_SIZE];
+		stashHashes = new int[STASH_SIZE];
+		stashCount = 0;
+	}
+
+	/**
+	 * Returns the number of key-value pairs
+	 */
+	public int size() {
+		return numberOfPairs;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Returns true if this symbol table contains the specified key.
+	 */
+	public boolean contains(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to contains() is null");
+		return get(key) != null;
+	}
+
+	// first slot of the bucket chosen by the first and second hash function;
+	// multiplicative hashing, so the bucket comes from the high bits
+	private int bucket1(int h) {
+		return (((h ^ seed) * C1) >>> shift) * SLOTS;
+	}
+
+	private int bucket2(int h) {
+		return (((h ^ seed) * C2) >>> shift) * SLOTS;
+	}
+
+	// slot of the key with hash h in its two buckets, or -1
+	private int slotOf(Key key, int h) {
+		int b = bucket1(h);
+		for (int i = b; i < b + SLOTS; i++)
+			if (hashes[i] == h && keys[i] != null && keys[i].equals(key))
+				return i;
+		b = bucket2(h);
+		for (int i = b; i < b + SLOTS; i++)
+			if (hashes[i] == h && keys[i] != null && keys[i].equals(key))
+				return i;
+		return -1;
+	}
+
+	// index of the key in the stash, or -1
+	private int stashIndexOf(Key key, int h) {
+		for (int i = 0; i < stashCount; i++)
+			if (stashHashes[i] == h && stashKeys[i].equals(key))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Returns the value associated with the specified key.
+	 */
+	public Value get(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to get() is null");
+		int h = key.hashCode();
+		int i = slotOf(key, h);
+		if (i >= 0)
+			return vals[i];
+		if (stashCount > 0) {
+			i = stashIndexOf(key, h);
+			if (i >= 0)
+				return stashVals[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Inserts the specified key-value pair into the symbol table, overwriting
+	 * the old value with the new value if the symbol table already contains the
+	 * specified key. Deletes the specified key (and its associated value) from
+	 * this symbol table if the specified value is null.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if key is null
+	 */
+	public void put(Key key, Value val) {
+		if (key == null)
+			throw new IllegalArgumentException("first argument to put() is null");
+
+		if (val == null) {
+			delete(key);
+			return;
+		}
+
+		int h = key.hashCode();
+		int i = slotOf(key, h);
+		if (i >= 0) {
+			vals[i] = val;
+			return;
+		}
+		if (stashCount > 0) {
+			i = stashIndexOf(key, h);
+			if (i >= 0) {
+				stashVals[i] = val;
+				return;
+			}
+		}
+
+		if (numberOfPairs + 1 > buckets * SLOTS * MAX_LOAD)
+			rebuild(2 * buckets);
+		numberOfPairs++;
+		modCount++;
+		insert(key, val, h);
+		if (stashCount > stashLimit)
+			rebuild(numberOfPairs >= buckets * SLOTS / 2 ? 2 * buckets : buckets);
+	}
+
+	// places a key known to be absent, evicting residents as needed; the
+	// key left homeless after MAX_KICKS evictions goes to the stash
+	private void insert(Key key, Value val, int h) {
+		if (place(key, val, h, bucket1(h)))
+			return;
+		int b = bucket2(h);
+		for (int kicks = 0; kicks < MAX_KICKS; kicks++) {
+			if (place(key, val, h, b))
+				return;
+			// evict a random resident of the full bucket b and move it on to
+			// its other bucket
+			random ^= random << 13;
+			random ^= random >>> 17;
+			random ^= random << 5;
+			int victim = b + (random & (SLOTS - 1));
+			Key k = keys[victim];
+			Value v = vals[victim];
+			int vh = hashes[victim];
+			keys[victim] = key;
+			vals[victim] = val;
+			hashes[victim] = h;
+			key = k;
+			val = v;
+			h = vh;
+			b = bucket1(h) == b ? bucket2(h) : bucket1(h);
+		}
+		stash(key, val, h);
+	}
+
+	// stores the key in a free slot of the bucket starting at b
+	private boolean place(Key key, Value val, int h, int b) {
+		for (int i = b; i < b + SLOTS; i++) {
+			if (keys[i] == null) {
+				keys[i] = key;
+				vals[i] = val;
+				hashes[i] = h;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void stash(Key key, Value val, int h) {
+		if (stashCount == stashKeys.length) {
+			Key[] k = (Key[]) new Object[2 * stashCount];
+			Value[] v = (Value[]) new Object[2 * stashCount];
+			int[] hs = new int[2 * stashCount];
+			System.arraycopy(stashKeys, 0, k, 0, stashCount);
+			System.arraycopy(stashVals, 0, v, 0, stashCount);
+			System.arraycopy(stashHashes, 0, hs, 0, stashCount);
+			stashKeys = k;
+			stashVals = v;
+			stashHashes = hs;
+		}
+		stashKeys[stashCount] = key;
+		stashVals[stashCount] = val;
+		stashHashes[stashCount] = h;
+		stashCount++;
+	}
+
+	// re-inserts every pair into a table of the given number of buckets with
+	// new hash functions
+	private void rebuild(int b) {
+		Key[] oldKeys = keys;
+		Value[] oldVals = vals;
+		int[] oldHashes = hashes;
+		Key[] oldStashKeys = stashKeys;
+		Value[] oldStashVals = stashVals;
+		int[] oldStashHashes = stashHashes;
+		int oldStashCount = stashCount;
+
+		allocate(b);
+		seed = ThreadLocalRandom.current().nextInt();
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldKeys[i] != null)
+				insert(oldKeys[i], oldVals[i], oldHashes[i]);
+		for (int i = 0; i < oldStashCount; i++)
+			insert(oldStashKeys[i], oldStashVals[i], oldStashHashes[i]);
+
+		// keys whose hash codes collide outright may not fit in any table;
+		// let the stash keep them rather than rebuild on every put
+		stashLimit = Math.max(STASH_SIZE, 2 * stashCount);
+	}
+
+	/**
+	 * Removes the specified key and its associated value from this symbol table
+	 * (if the key is in this symbol table).
+	 */
+	public void delete(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to delete() is null");
+		int h = key.hashCode();
+		int i = slotOf(key, h);
+		if (i >= 0) {
+			keys[i] = null;
+			vals[i] = null;
+		} else {
+			i = stashCount > 0 ? stashIndexOf(key, h) : -1;
+			if (i < 0)
+				return;
+			stashCount--;
+			stashKeys[i] = stashKeys[stashCount];
+			stashVals[i] = stashVals[stashCount];
+			stashHashes[i] = stashHashes[stashCount];
+			stashKeys[stashCount] = null;
+			stashVals[stashCount] = null;
+		}
+		numberOfPairs--;
+		modCount++;
+
+		// halves size of array if it's 12.5% full or less
+		if (buckets > INIT_BUCKETS && numberOfPairs <= buckets * SLOTS / 8)
+			rebuild(buckets / 2);
+
+		assert check();
+	}
+
+	/**
+	 * Returns all keys in this symbol table as an Iterable.
+	 */
+	public Iterable<Key> keys() {
+		Queue<Key> queue = new Queue<Key>();
+		for (int i = 0; i < keys.length; i++)
+			if (keys[i] != null)
+				queue.enqueue(keys[i]);
+		for (int i = 0; i < stashCount; i++)
+			queue.enqueue(stashKeys[i]);
+		return queue;
+	}
+
+	/**
+	 * Passes every key and its value to the action, without allocating.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if action is null
+	 * @throws ConcurrentModificationException
+	 *             if the action adds or removes a key
+	 */
+	public void forEach(BiConsumer<? super Key, ? super Value> action) {
+		if (action == null)
+			throw new IllegalArgumentException("argument to forEach() is null");
+		int expectedModCount = modCount;
+		Key[] keys = this.keys;
+		Value[] vals = this.vals;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				action.accept(keys[i], vals[i]);
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+			}
+		}
+		for (int i = 0; i < stashCount; i++) {
+			action.accept(stashKeys[i], stashVals[i]);
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+		}
+	}
+
+	/**
+	 * Returns a cursor over the entries of this symbol table; reset() makes
+	 * it reusable for later scans.
+	 */
+	public EntryCursor<Key, Value> cursor() {
+		return new Cursor();
+	}
+
+	// walks the slots and then the stash; positions past the slots index
+	// the stash
+	private class Cursor implements EntryCursor<Key, Value> {
+		private int position; // current position, or -1 before the first
+		private int expectedModCount;
+
+		Cursor() {
+			reset();
+		}
+
+		public boolean next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			while (++position < keys.length)
+				if (keys[position] != null)
+					return true;
+			if (position < keys.length + stashCount)
+				return true;
+			position = keys.length + stashCount;
+			return false;
+		}
+
+		private void checkPosition() {
+			if (position < 0 || position >= keys.length + stashCount)
+				throw new IllegalStateException("cursor is not on an entry");
+		}
+
+		public Key key() {
+			checkPosition();
+			return position < keys.length ? keys[position] : stashKeys[position - keys.length];
+		}
+
+		public Value value() {
+			checkPosition();
+			return position < keys.length ? vals[position] : stashVals[position - keys.length];
+		}
+
+		public void reset() {
+			position = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	// integrity check: every key sits in one of its two buckets or the stash
+	private boolean check() {
+		int n = stashCount;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == null)
+				continue;
+			n++;
+			int b = i - i % SLOTS;
+			if (hashes[i] != keys[i].hashCode() || (b != bucket1(hashes[i]) && b != bucket2(hashes[i]))) {
+				System.err.println("key " + keys[i] + " in wrong bucket " + b / SLOTS);
+				return false;
+			}
+		}
+		if (n != numberOfPairs) {
+			System.err.println("counted " + n + " keys; numberOfPairs = " + numberOfPairs);
+			return false;
+		}
+		return true;
+	}
+
+}
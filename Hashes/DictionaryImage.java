@@ -0,0 +1,313 @@
+package dataStructures;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Immutable on-disk image of a word/definition table, served straight from
+ * a memory mapping.
+ *
+ * write() hashes the entries into buckets once and lays them out as:
+ *
+ * header: int magic, int version, int bucketCount, int unused,
+ * long recordCount, long chunkSize
+ *
+ * bucket table: long[bucketCount + 1] file offsets; the records of bucket b
+ * lie between entries b and b + 1
+ *
+ * records: int keyLength, int definitionLength, int hash, key bytes,
+ * definition bytes, padded to a multiple of 4
+ *
+ * The file is mapped in chunks of chunkSize bytes, since a single mapping is
+ * limited to 2 GB. No record straddles two chunks: where one would, the
+ * writer fills the rest of the chunk with a padding record whose key length
+ * is -1. open() only reads the header, so startup does not depend on the
+ * size of the table, and every JVM that opens the same file shares its pages
+ * through the page cache.
+ */
+public class DictionaryImage implements Closeable {
+	private static final int MAGIC = 0x44494354; // "DICT"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+	private static final int RECORD_HEADER_BYTES = 12;
+	private static final int PADDING = -1; // key length of a padding record
+	private static final int DEFAULT_CHUNK_SIZE = 1 << 30; // 1 GB
+
+	private final MappedByteBuffer[] chunks;
+	private final int chunkSize;
+	private final int bucketMask; // bucketCount - 1
+	private final long recordCount;
+
+	private DictionaryImage(MappedByteBuffer[] chunks, int chunkSize, int bucketCount, long recordCount) {
+		this.chunks = chunks;
+		this.chunkSize = chunkSize;
+		this.bucketMask = bucketCount - 1;
+		this.recordCount = recordCount;
+	}
+
+	/**
+	 * Writes an image of the entries, given as {word, definition} pairs, using
+	 * 1 GB chunks. A word listed twice keeps its last definition.
+	 */
+	public static void write(String[][] elements, Path file) throws IOException {
+		write(elements, file, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Writes an image of the entries using the given chunk size.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if an entry is null, the chunk size is not a positive
+	 *             multiple of 8, or a record is larger than a chunk
+	 */
+	public static void write(String[][] elements, Path file, int chunkSize) throws IOException {
+		if (chunkSize <= 0 || chunkSize % 8 != 0)
+			throw new IllegalArgumentException("chunk size must be a positive multiple of 8");
+		int n = elements.length;
+		int bucketCount = 1;
+		while (bucketCount < n && bucketCount < 1 << 30)
+			bucketCount <<= 1;
+		if ((long) HEADER_BYTES + 8L * (bucketCount + 1) > chunkSize)
+			throw new IllegalArgumentException("bucket table does not fit in one chunk");
+
+		// encode the entries and sort them by bucket
+		byte[][] keys = new byte[n][];
+		byte[][] defs = new byte[n][];
+		int[] hashes = new int[n];
+		int[] bucketStart = new int[bucketCount + 1];
+		for (int i = 0; i < n; i++) {
+			if (elements[i] == null || elements[i][0] == null || elements[i][1] == null)
+				throw new IllegalArgumentException("entry " + i + " is null");
+			keys[i] = elements[i][0].getBytes(StandardCharsets.UTF_8);
+			defs[i] = elements[i][1].getBytes(StandardCharsets.UTF_8);
+			hashes[i] = OffHeapDictionary.fnv1a(keys[i], 0, keys[i].length);
+			if (recordLength(keys[i], defs[i]) > chunkSize)
+				throw new IllegalArgumentException("entry " + i + " is larger than a chunk");
+			bucketStart[bucket(hashes[i], bucketCount - 1) + 1]++;
+		}
+		for (int b = 0; b < bucketCount; b++)
+			bucketStart[b + 1] += bucketStart[b];
+		int[] order = new int[n];
+		int[] fill = bucketStart.clone();
+		for (int i = 0; i < n; i++)
+			order[fill[bucket(hashes[i], bucketCount - 1)]++] = i;
+
+		// drop all but the last entry of each duplicated word
+		boolean[] skip = new boolean[n];
+		long records = n;
+		for (int b = 0; b < bucketCount; b++)
+			for (int x = bucketStart[b]; x < bucketStart[b + 1]; x++)
+				for (int y = x + 1; y < bucketStart[b + 1]; y++)
+					if (!skip[order[x]] && hashes[order[x]] == hashes[order[y]]
+							&& Arrays.equals(keys[order[x]], keys[order[y]])) {
+						skip[order[x]] = true;
+						records--;
+					}
+
+		// lay out the records, then write header, table and records
+		long[] offsets = new long[bucketCount + 1];
+		long pos = HEADER_BYTES + 8L * (bucketCount + 1);
+		for (int b = 0; b < bucketCount; b++) {
+			offsets[b] = pos;
+			for (int x = bucketStart[b]; x < bucketStart[b + 1]; x++) {
+				int i = order[x];
+				if (!skip[i])
+					pos = padToFit(pos, recordLength(keys[i], defs[i]), chunkSize) + recordLength(keys[i], defs[i]);
+			}
+		}
+		offsets[bucketCount] = pos;
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(bucketCount);
+			out.writeInt(0);
+			out.writeLong(records);
+			out.writeLong(chunkSize);
+			for (long offset : offsets)
+				out.writeLong(offset);
+			pos = HEADER_BYTES + 8L * (bucketCount + 1);
+			for (int x = 0; x < n; x++) {
+				int i = order[x];
+				if (skip[i])
+					continue;
+				int length = recordLength(keys[i], defs[i]);
+				long start = padToFit(pos, length, chunkSize);
+				if (start > pos) {
+					out.writeInt(PADDING);
+					for (long p = pos + 4; p < start; p++)
+						out.write(0);
+				}
+				out.writeInt(keys[i].length);
+				out.writeInt(defs[i].length);
+				out.writeInt(hashes[i]);
+				out.write(keys[i]);
+				out.write(defs[i]);
+				for (int p = RECORD_HEADER_BYTES + keys[i].length + defs[i].length; p < length; p++)
+					out.write(0);
+				pos = start + length;
+			}
+		}
+	}
+
+	// bytes taken by a record, rounded up to a multiple of 4
+	private static int recordLength(byte[] key, byte[] def) {
+		long length = RECORD_HEADER_BYTES + (long) key.length + def.length;
+		return (int) Math.min(Integer.MAX_VALUE, (length + 3) & ~3L);
+	}
+
+	// where a record of the given length starts if written at pos: pos
+	// itself, or the next chunk boundary if it would straddle one
+	private static long padToFit(long pos, int length, int chunkSize) {
+		long end = pos % chunkSize + length;
+		return end > chunkSize ? pos + (chunkSize - pos % chunkSize) : pos;
+	}
+
+	private static int bucket(int h, int mask) {
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Maps an image written by write().
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read or is not a dictionary image
+	 */
+	public static DictionaryImage open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if (fileSize < HEADER_BYTES)
+				throw new IOException(file + " is not a dictionary image");
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if (header.getInt(0) != MAGIC)
+				throw new IOException(file + " is not a dictionary image");
+			if (header.getInt(4) != VERSION)
+				throw new IOException(file + " has unsupported version " + header.getInt(4));
+			int bucketCount = header.getInt(8);
+			long recordCount = header.getLong(16);
+			long chunkSize = header.getLong(24);
+			if (Integer.bitCount(bucketCount) != 1 || chunkSize <= 0 || chunkSize > Integer.MAX_VALUE
+					|| HEADER_BYTES + 8L * (bucketCount + 1) > fileSize)
+				throw new IOException(file + " has a corrupt header");
+
+			// the mappings stay valid after the channel is closed
+			int count = (int) ((fileSize + chunkSize - 1) / chunkSize);
+			MappedByteBuffer[] chunks = new MappedByteBuffer[count];
+			for (int c = 0; c < count; c++) {
+				long start = c * chunkSize;
+				chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkSize, fileSize - start));
+			}
+			return new DictionaryImage(chunks, (int) chunkSize, bucketCount, recordCount);
+		}
+	}
+
+	/**
+	 * Returns the number of words in the image.
+	 */
+	public long size() {
+		return recordCount;
+	}
+
+	/**
+	 * Returns the definition of the word, or null if it is not in the image.
+	 */
+	public String find(String wordToFind) {
+		if (wordToFind == null)
+			throw new IllegalArgumentException("argument to find() is null");
+		byte[] key = wordToFind.getBytes(StandardCharsets.UTF_8);
+		int h = OffHeapDictionary.fnv1a(key, 0, key.length);
+		long table = HEADER_BYTES + 8L * bucket(h, bucketMask);
+		long pos = getLong(table);
+		long end = getLong(table + 8);
+		while (pos < end) {
+			ByteBuffer chunk = chunks[(int) (pos / chunkSize)];
+			int offset = (int) (pos % chunkSize);
+			int keyLength = chunk.getInt(offset);
+			if (keyLength == PADDING) {
+				pos += chunkSize - offset;
+				continue;
+			}
+			int defLength = chunk.getInt(offset + 4);
+			if (keyLength == key.length && chunk.getInt(offset + 8) == h
+					&& keyEquals(chunk, offset + RECORD_HEADER_BYTES, key)) {
+				byte[] def = new byte[defLength];
+				chunk.get(offset + RECORD_HEADER_BYTES + keyLength, def);
+				return new String(def, StandardCharsets.UTF_8);
+			}
+			pos += (RECORD_HEADER_BYTES + (long) keyLength + defLength + 3) & ~3L;
+		}
+		return null;
+	}
+
+	public boolean contains(String word) {
+		return find(word) != null;
+	}
+
+	private static boolean keyEquals(ByteBuffer chunk, int offset, byte[] key) {
+		for (int j = 0; j < key.length; j++)
+			if (chunk.get(offset + j) != key[j])
+				return false;
+		return true;
+	}
+
+	// the bucket table never straddles a chunk, write() checks that
+	private long getLong(long pos) {
+		return chunks[(int) (pos / chunkSize)].getLong((int) (pos % chunkSize));
+	}
+
+	/**
+	 * Drops the mappings; the pages are released once the buffers are
+	 * collected.
+	 */
+	public void close() {
+		Arrays.fill(chunks, null);
+	}
+
+	/**
+	 * Builds an image of n synthetic words, or of HashFunction's sample words
+	 * if n is not given, then times opening it and looking words up.
+	 *
+	 * Usage: java dataStructures.DictionaryImage file [n]
+	 */
+	public static void main(String[] args) throws IOException {
+		Path file = Paths.get(args.length > 0 ? args[0] : "dictionary.img");
+		String[][] elements;
+		if (args.length > 1) {
+			elements = new String[Integer.parseInt(args[1])][];
+			for (int i = 0; i < elements.length; i++)
+				elements[i] = new String[] { "word" + i, "definition of word number " + i };
+		} else {
+			elements = new HashFunction(11).elementsToAdd;
+		}
+
+		long start = System.nanoTime();
+		write(elements, file);
+		System.out.printf("wrote %d words to %s in %d ms%n", elements.length, file,
+				(System.nanoTime() - start) / 1000000);
+
+		start = System.nanoTime();
+		try (DictionaryImage image = open(file)) {
+			System.out.printf("opened %d words in %.3f ms%n", image.size(), (System.nanoTime() - start) / 1e6);
+			start = System.nanoTime();
+			int found = 0;
+			for (String[] element : elements)
+				if (image.find(element[0]) != null)
+					found++;
+			System.out.printf("found %d words, %.1f ns per find%n", found,
+					(System.nanoTime() - start) / (double) elements.length);
+			System.out.println(elements[0][0] + " : " + image.find(elements[0][0]));
+		}
+	}
+
+}
@@ -0,0 +1,47 @@
+package hashes;
+
+/**
+ * Walks the entries of a table in place, without copying keys into a queue
+ * or allocating per entry.
+ *
+ * A cursor starts before the first entry; next() moves it to the following
+ * entry and returns false once there are none left. reset() rewinds it so
+ * the same cursor can serve any number of scans. A cursor fails fast: next()
+ * throws ConcurrentModificationException if the table was structurally
+ * modified (a key added or removed, or the table resized) since the cursor
+ * was created or last reset. Replacing the value of an existing key is not
+ * a structural modification.
+ */
+public interface EntryCursor<Key, Value> {
+
+	/**
+	 * Advances to the next entry and returns true, or returns false if there
+	 * are no more entries.
+	 *
+	 * @throws java.util.ConcurrentModificationException
+	 *             if the table was structurally modified
+	 */
+	boolean next();
+
+	/**
+	 * Returns the key of the current entry.
+	 *
+	 * @throws IllegalStateException
+	 *             if next() has not returned true
+	 */
+	Key key();
+
+	/**
+	 * Returns the value of the current entry.
+	 *
+	 * @throws IllegalStateException
+	 *             if next() has not returned true
+	 */
+	Value value();
+
+	/**
+	 * Rewinds the cursor to before the first entry of the table as it is now.
+	 */
+	void reset();
+
+}
@@ -0,0 +1,103 @@
+package hashes;
+
+/**
+ * Approximate access counts in a count-min sketch of 4-bit counters.
+ *
+ * The counters are packed sixteen to a long. A key bumps one counter in each
+ * of four rows and its frequency is the smallest of the four, so collisions
+ * can only overstate it. Counters saturate at 15. After sampleSize
+ * increments every counter is halved, which ages out keys that were popular
+ * long ago and keeps the sketch tracking recent traffic.
+ */
+public class FrequencySketch {
+	private static final int[] SEEDS = { 0x97CB3127, 0xB1A83A3B, 0xDE4C7BE7, 0x6F1A4C2D };
+	private static final long ODD_MASK = 0x1111111111111111L; // low bit of each counter
+	private static final long HALF_MASK = 0x7777777777777777L; // counter bits left after a shift
+
+	private static final int MAX_LONGS = 1 << 26;
+
+	private long[] table;
+	private int counterMask; // number of counters - 1
+	private int sampleSize; // increments between agings
+	private int additions; // increments since the last aging
+
+	/**
+	 * Initializes a sketch sized for about capacity distinct hot keys.
+	 */
+	public FrequencySketch(int capacity) {
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		int longs = longsFor(capacity);
+		table = new long[longs];
+		counterMask = 16 * longs - 1;
+		sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * Math.max(1, capacity));
+		additions = 0;
+	}
+
+	// one long of sixteen counters per key, rounded up to a power of two
+	private static int longsFor(int capacity) {
+		if (capacity <= 1)
+			return 1;
+		return capacity > MAX_LONGS / 2 ? MAX_LONGS : Integer.highestOneBit(capacity - 1) << 1;
+	}
+
+	/**
+	 * Grows the sketch to about capacity distinct keys if it is smaller. The
+	 * counts gathered so far are dropped, since they cannot be rehashed.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (longsFor(capacity) > table.length)
+			allocate(capacity);
+	}
+
+	// counter of the hash in row i
+	private int indexOf(int h, int i) {
+		int x = (h ^ (h >>> 16)) * SEEDS[i];
+		return (x ^ (x >>> 17)) & counterMask;
+	}
+
+	private int counter(int index) {
+		return (int) (table[index >>> 4] >>> ((index & 15) << 2)) & 0xF;
+	}
+
+	/**
+	 * Returns the estimated number of recent accesses of a hash, from 0 to
+	 * 15.
+	 */
+	public int frequency(int h) {
+		int min = 15;
+		for (int i = 0; i < SEEDS.length; i++)
+			min = Math.min(min, counter(indexOf(h, i)));
+		return min;
+	}
+
+	/**
+	 * Records an access of a hash.
+	 */
+	public void increment(int h) {
+		boolean added = false;
+		for (int i = 0; i < SEEDS.length; i++) {
+			int index = indexOf(h, i);
+			if (counter(index) < 15) {
+				table[index >>> 4] += 1L << ((index & 15) << 2);
+				added = true;
+			}
+		}
+		if (added && ++additions >= sampleSize)
+			age();
+	}
+
+	// halves every counter
+	private void age() {
+		int odd = 0;
+		for (int i = 0; i < table.length; i++) {
+			odd += Long.bitCount(table[i] & ODD_MASK);
+			table[i] = (table[i] >>> 1) & HALF_MASK;
+		}
+		// the halving rounds odd counters down, a quarter per row
+		additions = Math.max(0, additions - (odd >>> 2)) >>> 1;
+	}
+
+}
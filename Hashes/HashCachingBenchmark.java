@@ -0,0 +1,231 @@
+package hashes;
+
+import java.util.Random;
+
+/**
+ * Times put/get on keys with an expensive equals() and counts how often the
+ * tables call equals() and hashCode().
+ *
+ * Every table keeps each key's hash next to it, so equals() only runs when
+ * the stored hash matches: about once per successful lookup and almost never
+ * on a miss, however long the probe sequence or chain. hashCode() runs once
+ * per operation and never during a resize. The first table run is a
+ * baseline that stores no hashes, as LinearProbingHashST did before: it
+ * calls equals() on every key it probes and hashCode() again for every key
+ * it moves in a resize.
+ *
+ * Usage: java hashes.HashCachingBenchmark [number of keys]
+ */
+public class HashCachingBenchmark {
+
+	// a composite key whose fields share a long prefix, so equals() has to
+	// compare most of the characters before it can say no
+	static final class CompositeKey {
+		static long equalsCalls;
+		static long hashCodeCalls;
+
+		private final String tenant;
+		private final String path;
+		private final int id;
+
+		CompositeKey(String tenant, String path, int id) {
+			this.tenant = tenant;
+			this.path = path;
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			equalsCalls++;
+			if (!(o instanceof CompositeKey))
+				return false;
+			CompositeKey that = (CompositeKey) o;
+			return path.equals(that.path) && tenant.equals(that.tenant) && id == that.id;
+		}
+
+		@Override
+		public int hashCode() {
+			hashCodeCalls++;
+			int h = 0;
+			for (int i = 0; i < path.length(); i++)
+				h = 31 * h + path.charAt(i);
+			h = 31 * h + tenant.hashCode();
+			return 31 * h + id;
+		}
+	}
+
+	// the operations every table under test supports
+	private interface Table {
+		void put(CompositeKey key, Integer val);
+
+		Integer get(CompositeKey key);
+	}
+
+	// linear probing without cached hashes, for comparison
+	private static final class UncachedLinearProbing implements Table {
+		private int n;
+		private int m = 4;
+		private CompositeKey[] keys = new CompositeKey[m];
+		private Integer[] vals = new Integer[m];
+
+		private int hash(CompositeKey key) {
+			return (key.hashCode() & 0x7fffffff) % m;
+		}
+
+		private void resize(int capacity) {
+			CompositeKey[] oldKeys = keys;
+			Integer[] oldVals = vals;
+			m = capacity;
+			keys = new CompositeKey[m];
+			vals = new Integer[m];
+			for (int j = 0; j < oldKeys.length; j++) {
+				if (oldKeys[j] == null)
+					continue;
+				int i = hash(oldKeys[j]);
+				while (keys[i] != null)
+					i = (i + 1) % m;
+				keys[i] = oldKeys[j];
+				vals[i] = oldVals[j];
+			}
+		}
+
+		public void put(CompositeKey key, Integer val) {
+			if (n >= m / 2)
+				resize(2 * m);
+			int i;
+			for (i = hash(key); keys[i] != null; i = (i + 1) % m) {
+				if (keys[i].equals(key)) {
+					vals[i] = val;
+					return;
+				}
+			}
+			keys[i] = key;
+			vals[i] = val;
+			n++;
+		}
+
+		public Integer get(CompositeKey key) {
+			for (int i = hash(key); keys[i] != null; i = (i + 1) % m)
+				if (keys[i].equals(key))
+					return vals[i];
+			return null;
+		}
+	}
+
+	private static CompositeKey[] keys(int n, int offset, Random random) {
+		StringBuilder prefix = new StringBuilder("/tenants/region-eu-west/accounts/");
+		while (prefix.length() < 200)
+			prefix.append("segment/");
+		CompositeKey[] keys = new CompositeKey[n];
+		for (int i = 0; i < n; i++) {
+			int id = offset + i;
+			keys[i] = new CompositeKey("tenant-" + (id % 16), prefix + Integer.toString(id, 36), random.nextInt());
+		}
+		return keys;
+	}
+
+	private static void run(String name, Table table, CompositeKey[] present, CompositeKey[] absent) {
+		resetCounters();
+		long start = System.nanoTime();
+		for (int i = 0; i < present.length; i++)
+			table.put(present[i], i);
+		report(name, "put", present.length, System.nanoTime() - start);
+
+		resetCounters();
+		start = System.nanoTime();
+		long found = 0;
+		for (CompositeKey key : present)
+			if (table.get(key) != null)
+				found++;
+		report(name, "get hit", present.length, System.nanoTime() - start);
+
+		resetCounters();
+		start = System.nanoTime();
+		for (CompositeKey key : absent)
+			if (table.get(key) != null)
+				found++;
+		report(name, "get miss", absent.length, System.nanoTime() - start);
+
+		if (found != present.length)
+			throw new IllegalStateException(name + " found " + found + " of " + present.length + " keys");
+	}
+
+	private static void resetCounters() {
+		CompositeKey.equalsCalls = 0;
+		CompositeKey.hashCodeCalls = 0;
+	}
+
+	private static void report(String table, String op, int n, long nanos) {
+		System.out.printf("%-24s %-9s %8.1f ns/op %6.2f equals/op %6.2f hashCode/op%n", table, op,
+				nanos / (double) n, CompositeKey.equalsCalls / (double) n, CompositeKey.hashCodeCalls / (double) n);
+	}
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		Random random = new Random(42);
+		CompositeKey[] present = keys(n, 0, random);
+		CompositeKey[] absent = keys(n, n, random);
+
+		for (int round = 0; round < 2; round++) {
+			System.out.println(round == 0 ? "warm-up" : "measured");
+
+			run("LinearProbing, uncached", new UncachedLinearProbing(), present, absent);
+
+			final LinearProbingHashST<CompositeKey, Integer> lp = new LinearProbingHashST<CompositeKey, Integer>();
+			run("LinearProbingHashST", new Table() {
+				public void put(CompositeKey key, Integer val) {
+					lp.put(key, val);
+				}
+
+				public Integer get(CompositeKey key) {
+					return lp.get(key);
+				}
+			}, present, absent);
+
+			final SeparateChainingHashST<CompositeKey, Integer> sc = new SeparateChainingHashST<CompositeKey, Integer>();
+			run("SeparateChainingHashST", new Table() {
+				public void put(CompositeKey key, Integer val) {
+					sc.put(key, val);
+				}
+
+				public Integer get(CompositeKey key) {
+					return sc.get(key);
+				}
+			}, present, absent);
+
+			final HashMap<CompositeKey, Integer> map = new HashMap<CompositeKey, Integer>();
+			run("HashMap", new Table() {
+				public void put(CompositeKey key, Integer val) {
+					map.put(key, val);
+				}
+
+				public Integer get(CompositeKey key) {
+					return map.get(key);
+				}
+			}, present, absent);
+
+			final RobinHoodHashST<CompositeKey, Integer> rh = new RobinHoodHashST<CompositeKey, Integer>();
+			run("RobinHoodHashST", new Table() {
+				public void put(CompositeKey key, Integer val) {
+					rh.put(key, val);
+				}
+
+				public Integer get(CompositeKey key) {
+					return rh.get(key);
+				}
+			}, present, absent);
+
+			final SwissHashST<CompositeKey, Integer> swiss = new SwissHashST<CompositeKey, Integer>();
+			run("SwissHashST", new Table() {
+				public void put(CompositeKey key, Integer val) {
+					swiss.put(key, val);
+				}
+
+				public Integer get(CompositeKey key) {
+					return swiss.get(key);
+				}
+			}, present, absent);
+		}
+	}
+
+}
@@ -2,12 +2,19 @@ package dataStructures;
 
 import java.util.Scanner;
 
+import hashes.HashTableStats;
+
 public class HashFunction {
 
 	WordList[] theArray;
 
 	int arraySize;
 
+	StringHashStrategy hashStrategy;
+
+	// print every hash computation
+	boolean trace;
+
 	public String[][] elementsToAdd = { { "ace", "Very good" }, { "act", "Take action" },
 			{ "add", "Join (something) to something else" }, { "age", "Grow old" }, { "ago", "Before the present" },
 			{ "aid", "Help, assist, or support" }, { "aim", "Point or direct" },
@@ -26,8 +33,15 @@ public class HashFunction {
 			{ "axe", "Edge tool with a heavy bladed head" }, { "aye", "An affirmative answer" } };
 
 	public HashFunction(int size) {
+		this(size, StringHashStrategy.POLYNOMIAL);
+	}
+
+	public HashFunction(int size, StringHashStrategy hashStrategy) {
 		// uses separate chaining for collision resolution
+		if (hashStrategy == null)
+			throw new IllegalArgumentException("hash strategy is null");
 		arraySize = size;
+		this.hashStrategy = hashStrategy;
 		theArray = new WordList[size];
 
 		for (int i = 0; i < arraySize; i++) {
@@ -69,24 +83,35 @@ public class HashFunction {
 
 	public int stringHashFunction(String wordToHash) {
 
-		int hashKeyValue = 0;
+		int hash = hashStrategy.hash(wordToHash);
 
-		for (int i = 0; i < wordToHash.length(); i++) {
+		int hashKeyValue = hashStrategy.index(wordToHash, arraySize);
 
-			int charCode = wordToHash.charAt(i) - 96;
-
-			int hKVTemp = hashKeyValue;
+		if (trace) {
+			System.out.println(hashStrategy + "(" + wordToHash + ") = " + hash + " % arraySize " + arraySize + " = "
+					+ hashKeyValue);
+		}
 
-			hashKeyValue = (hashKeyValue * 27 + charCode) % arraySize;
+		return hashKeyValue;
+	}
 
-			System.out.println("Hash key value " + hKVTemp + " * 27 + Character Code " + charCode + " % arraySize "
-					+ arraySize + " = " + hashKeyValue);
+	public void setTrace(boolean trace) {
+		this.trace = trace;
+	}
 
+	// chain length histogram and longest chain of the word lists; the array
+	// never resizes
+	public HashTableStats stats() {
+		int size = 0;
+		for (int i = 0; i < arraySize; i++)
+			size += theArray[i].length();
+		HashTableStats.Builder b = new HashTableStats.Builder("HashFunction", HashTableStats.Kind.CHAIN, size,
+				arraySize);
+		for (int i = 0; i < arraySize; i++) {
+			int length = theArray[i].length();
+			b.length(length).cluster(length);
 		}
-
-		System.out.println();
-
-		return hashKeyValue;
+		return b.build();
 	}
 
 	public void displayTheArray() {
@@ -144,7 +169,18 @@ public class HashFunction {
 				previous.next = newWord;
 			}
 
-			newWord.next = previous;
+			newWord.next = current;
+		}
+
+		public int length() {
+
+			int length = 0;
+
+			for (Word current = firstWord; current != null; current = current.next) {
+				length++;
+			}
+
+			return length;
 		}
 
 		public void displayWordList() {
@@ -180,6 +216,7 @@ public class HashFunction {
 		
 		Scanner input = new Scanner(System.in);
 		HashFunction wordHashTable = new HashFunction(11);
+		wordHashTable.setTrace(true);
 		String wordLookUp = "a";
 		
 		while (!wordLookUp.equalsIgnoreCase("x")) {
@@ -194,6 +231,7 @@ public class HashFunction {
 		}
 		
 		wordHashTable.displayTheArray();
+		System.out.println(wordHashTable.stats());
 		
 	}
 
@@ -1,14 +1,37 @@
 package hashes;
 
-public class HashMap<K, V> {
-	private class Entry<K, V> {
-		private K key;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * Generic hash map using separate chaining over a power-of-two table.
+ *
+ * The table doubles once the number of entries passes capacity * loadFactor,
+ * so chains stay short and get/put run in constant expected time. Bucket
+ * indices are taken by masking the spread hash code instead of a modulo.
+ * Iterating the map returns its keys in table order.
+ *
+ * Each entry keeps the spread hash of its key, so a chain walk only calls
+ * equals() on entries whose hash matches and a resize never calls
+ * hashCode() again.
+ *
+ * stats() reports the chain length histogram and the number and duration of
+ * resizes, for monitoring.
+ */
+public class HashMap<K, V> implements Iterable<K> {
+	private static class Entry<K, V> {
+		private final int hash;
+		private final K key;
 		private V value;
-		private Entry next;
+		private Entry<K, V> next;
 
-		Entry(K key, V value) {
+		Entry(int hash, K key, V value, Entry<K, V> next) {
+			this.hash = hash;
 			this.key = key;
 			this.value = value;
+			this.next = next;
 		}
 
 		public K getKey() {
@@ -20,60 +43,299 @@ public class HashMap<K, V> {
 		}
 	}
 
-	private final static int TABLE_SIZE = 17;
-	private Entry[] table;
+	private final static int INIT_CAPACITY = 16;
+	private final static int MAX_CAPACITY = 1 << 30;
+	private final static float DEFAULT_LOAD_FACTOR = 0.75f;
+
+	private Entry<K, V>[] table;
+	private int size; // number of entries
+	private int threshold; // resize when size exceeds this
+	private int modCount; // structural modifications, for fail-fast iteration
+	private long resizes; // number of resizes
+	private long resizeNanos; // time spent in them
+	private final float loadFactor;
 
 	public HashMap() {
-		table = new Entry[TABLE_SIZE];
+		this(INIT_CAPACITY, DEFAULT_LOAD_FACTOR);
+	}
+
+	public HashMap(int initialCapacity) {
+		this(initialCapacity, DEFAULT_LOAD_FACTOR);
+	}
+
+	/**
+	 * Initializes an empty map.
+	 *
+	 * @param initialCapacity
+	 *            the initial number of buckets, rounded up to a power of two
+	 * @param loadFactor
+	 *            the average chain length at which the table doubles
+	 * @throws IllegalArgumentException
+	 *             if initialCapacity is negative or loadFactor is not positive
+	 */
+	public HashMap(int initialCapacity, float loadFactor) {
+		if (initialCapacity < 0)
+			throw new IllegalArgumentException("initial capacity must be non-negative");
+		if (!(loadFactor > 0))
+			throw new IllegalArgumentException("load factor must be positive");
+		this.loadFactor = loadFactor;
+		int capacity = 1;
+		while (capacity < initialCapacity && capacity < MAX_CAPACITY)
+			capacity <<= 1;
+		allocate(capacity);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void allocate(int capacity) {
+		table = (Entry<K, V>[]) new Entry<?, ?>[capacity];
+		threshold = capacity == MAX_CAPACITY ? Integer.MAX_VALUE : (int) (capacity * loadFactor);
+	}
+
+	// spreads the high bits of the hash code into the low bits used by the
+	// mask, so keys differing only in their high bits do not collide
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	private int indexFor(int hash) {
+		return hash & (table.length - 1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
 	}
 
-	private int hash(K key) {
-		return Math.abs(key.hashCode() % TABLE_SIZE);
+	public boolean containsKey(K key) {
+		return getEntry(key) != null;
+	}
+
+	private Entry<K, V> getEntry(K key) {
+		if (key == null)
+			throw new IllegalArgumentException("key is null");
+		int hash = spread(key.hashCode());
+		for (Entry<K, V> curr = table[indexFor(hash)]; curr != null; curr = curr.next) {
+			if (curr.hash == hash && curr.getKey().equals(key))
+				return curr;
+		}
+		return null;
 	}
 
 	public V get(K key) {
-		int index = hash(key);
-		Entry curr = table[index];
-		while (curr != null) {
-			if (curr.getKey().equals(key)) {
-				return (V) curr.getValue();
+		Entry<K, V> entry = getEntry(key);
+		return entry == null ? null : entry.getValue();
+	}
+
+	/**
+	 * Removes the key and returns its value, or null if the key was not in the
+	 * map.
+	 */
+	public V remove(K key) {
+		if (key == null)
+			throw new IllegalArgumentException("key is null");
+		int hash = spread(key.hashCode());
+		int index = indexFor(hash);
+		Entry<K, V> prev = null;
+		for (Entry<K, V> curr = table[index]; curr != null; prev = curr, curr = curr.next) {
+			if (curr.hash == hash && curr.getKey().equals(key)) {
+				if (prev == null)
+					table[index] = curr.next;
+				else
+					prev.next = curr.next;
+				size--;
+				modCount++;
+				return curr.getValue();
 			}
-			curr = curr.next;
 		}
 		return null;
 	}
 
-	public V remove(K key) {
-		int hash = hash(key);
-		Entry curr = table[hash];
-		if (curr == null) {
-			return null;
-		}
-		if (curr.getKey().equals(key)) {
-			V temp = (V) curr.getValue();
-			table[hash] = curr.next;
-			return temp;
-		}
-		while (curr.next != null) {
-			if (curr.next.getKey().equals(key)) {
-				V temp = (V) curr.next.getValue();
-				curr.next = curr.next.next;
-				return temp;
+	/**
+	 * Associates the value with the key, replacing the value in place if the
+	 * key is already present, and returns the previous value or null.
+	 */
+	public V put(K key, V value) {
+		if (key == null)
+			throw new IllegalArgumentException("key is null");
+		int hash = spread(key.hashCode());
+		int index = indexFor(hash);
+		for (Entry<K, V> curr = table[index]; curr != null; curr = curr.next) {
+			if (curr.hash == hash && curr.getKey().equals(key)) {
+				V previous = curr.value;
+				curr.value = value;
+				return previous;
 			}
 		}
+		table[index] = new Entry<K, V>(hash, key, value, table[index]);
+		modCount++;
+		if (++size > threshold)
+			resize(table.length * 2);
 		return null;
 	}
 
-	public void put(K key, V value) {
-		int hash = hash(key);
-		Entry curr = table[hash];
-		if (curr == null) {
-			table[hash(key)] = new Entry(key, value);
-		} else {
-			while (curr.next != null) {
-				curr = curr.next;
+	public void clear() {
+		for (int i = 0; i < table.length; i++)
+			table[i] = null;
+		size = 0;
+		modCount++;
+	}
+
+	// relinks every entry into a table of the given capacity
+	private void resize(int capacity) {
+		if (table.length == MAX_CAPACITY)
+			return;
+		long start = System.nanoTime();
+		Entry<K, V>[] old = table;
+		allocate(capacity);
+		for (int i = 0; i < old.length; i++) {
+			Entry<K, V> curr = old[i];
+			while (curr != null) {
+				Entry<K, V> next = curr.next;
+				int index = indexFor(curr.hash);
+				curr.next = table[index];
+				table[index] = curr;
+				curr = next;
 			}
-			curr.next = new Entry(key, value);
+		}
+		resizes++;
+		resizeNanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * Returns the chain length histogram, longest chain and resize counts of
+	 * this map.
+	 */
+	public HashTableStats stats() {
+		HashTableStats.Builder b = new HashTableStats.Builder("HashMap", HashTableStats.Kind.CHAIN, size,
+				table.length);
+		for (int i = 0; i < table.length; i++) {
+			int length = 0;
+			for (Entry<K, V> curr = table[i]; curr != null; curr = curr.next)
+				length++;
+			b.length(length).cluster(length);
+		}
+		return b.resizes(resizes, resizeNanos).build();
+	}
+
+	/**
+	 * Returns an iterator over the keys. The iterator fails fast if the map is
+	 * structurally modified other than through its own remove().
+	 */
+	public Iterator<K> iterator() {
+		return new KeyIterator();
+	}
+
+	/**
+	 * Passes every key and its value to the action, without allocating.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if action is null
+	 * @throws ConcurrentModificationException
+	 *             if the action adds or removes a key
+	 */
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		if (action == null)
+			throw new IllegalArgumentException("action is null");
+		int expectedModCount = modCount;
+		Entry<K, V>[] table = this.table;
+		for (int i = 0; i < table.length; i++) {
+			for (Entry<K, V> curr = table[i]; curr != null; curr = curr.next) {
+				action.accept(curr.key, curr.value);
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+			}
+		}
+	}
+
+	/**
+	 * Returns a cursor over the entries in table order; reset() makes it
+	 * reusable for later scans.
+	 */
+	public EntryCursor<K, V> cursor() {
+		return new Cursor();
+	}
+
+	private class Cursor implements EntryCursor<K, V> {
+		private Entry<K, V>[] table;
+		private int index; // next bucket to visit
+		private Entry<K, V> current; // null before the first entry and after the last
+		private int expectedModCount;
+
+		Cursor() {
+			reset();
+		}
+
+		public boolean next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (current != null)
+				current = current.next;
+			while (current == null && index < table.length)
+				current = table[index++];
+			return current != null;
+		}
+
+		public K key() {
+			if (current == null)
+				throw new IllegalStateException("cursor is not on an entry");
+			return current.key;
+		}
+
+		public V value() {
+			if (current == null)
+				throw new IllegalStateException("cursor is not on an entry");
+			return current.value;
+		}
+
+		public void reset() {
+			table = HashMap.this.table;
+			index = 0;
+			current = null;
+			expectedModCount = modCount;
+		}
+	}
+
+	private class KeyIterator implements Iterator<K> {
+		private int index; // next bucket to visit
+		private Entry<K, V> next; // next entry to return
+		private Entry<K, V> current; // last entry returned
+		private int expectedModCount = modCount;
+
+		KeyIterator() {
+			advance();
+		}
+
+		private void advance() {
+			while (next == null && index < table.length)
+				next = table[index++];
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public K next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (next == null)
+				throw new NoSuchElementException();
+			current = next;
+			next = next.next;
+			advance();
+			return current.getKey();
+		}
+
+		public void remove() {
+			if (current == null)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			HashMap.this.remove(current.getKey());
+			current = null;
+			expectedModCount = modCount;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,201 @@
+package hashes;
+
+import java.util.Arrays;
+
+/**
+ * Immutable snapshot of the shape of a hash table: how long its probe
+ * sequences or chains are, how full it is and how often it has resized.
+ *
+ * Tables only keep two counters as they run, the number of resizes and the
+ * time spent in them, so the cost during normal operation is two
+ * System.nanoTime() calls per resize. Everything else is measured by
+ * walking the table when stats() is called, which is O(capacity).
+ *
+ * For a PROBE table, histogram()[k] is the number of keys found by the k-th
+ * probe of their sequence, so index 0 is always 0. For a CHAIN table,
+ * histogram()[k] is the number of buckets holding k keys.
+ */
+public final class HashTableStats {
+
+	public enum Kind {
+		/** open addressing: lengths are probes per successful lookup */
+		PROBE,
+		/** separate chaining: lengths are keys per bucket */
+		CHAIN
+	}
+
+	private final String table;
+	private final Kind kind;
+	private final int size;
+	private final int capacity;
+	private final long[] histogram;
+	private final int longestCluster;
+	private final long resizes;
+	private final long resizeNanos;
+
+	private HashTableStats(Builder b) {
+		table = b.table;
+		kind = b.kind;
+		size = b.size;
+		capacity = b.capacity;
+		histogram = Arrays.copyOf(b.histogram, b.maxLength + 1);
+		longestCluster = b.longestCluster;
+		resizes = b.resizes;
+		resizeNanos = b.resizeNanos;
+	}
+
+	/**
+	 * Collects the lengths of a table while it is walked.
+	 */
+	public static final class Builder {
+		private final String table;
+		private final Kind kind;
+		private final int size;
+		private final int capacity;
+		private long[] histogram = new long[8];
+		private int maxLength;
+		private int longestCluster;
+		private long resizes;
+		private long resizeNanos;
+
+		/**
+		 * @throws IllegalArgumentException
+		 *             if table or kind is null
+		 */
+		public Builder(String table, Kind kind, int size, int capacity) {
+			if (table == null || kind == null)
+				throw new IllegalArgumentException("table and kind must not be null");
+			this.table = table;
+			this.kind = kind;
+			this.size = size;
+			this.capacity = capacity;
+		}
+
+		/**
+		 * Counts one key's probe length or one bucket's chain length.
+		 */
+		public Builder length(int length) {
+			if (length >= histogram.length)
+				histogram = Arrays.copyOf(histogram, Math.max(length + 1, 2 * histogram.length));
+			histogram[length]++;
+			maxLength = Math.max(maxLength, length);
+			return this;
+		}
+
+		/**
+		 * Records a run of occupied slots or a chain; the longest is kept.
+		 */
+		public Builder cluster(int length) {
+			longestCluster = Math.max(longestCluster, length);
+			return this;
+		}
+
+		public Builder resizes(long count, long nanos) {
+			resizes = count;
+			resizeNanos = nanos;
+			return this;
+		}
+
+		public HashTableStats build() {
+			return new HashTableStats(this);
+		}
+	}
+
+	/**
+	 * Returns the simple class name of the table.
+	 */
+	public String table() {
+		return table;
+	}
+
+	public Kind kind() {
+		return kind;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of slots or buckets.
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	public double loadFactor() {
+		return capacity == 0 ? 0 : size / (double) capacity;
+	}
+
+	/**
+	 * Returns a copy of the length histogram.
+	 */
+	public long[] histogram() {
+		return histogram.clone();
+	}
+
+	/**
+	 * Returns the number of keys (PROBE) or buckets (CHAIN) with the given
+	 * length.
+	 */
+	public long count(int length) {
+		return length >= 0 && length < histogram.length ? histogram[length] : 0;
+	}
+
+	public int maxLength() {
+		return histogram.length - 1;
+	}
+
+	/**
+	 * Returns the mean length: probes per successful lookup for PROBE, keys
+	 * per bucket for CHAIN.
+	 */
+	public double meanLength() {
+		long n = 0, sum = 0;
+		for (int k = 0; k < histogram.length; k++) {
+			n += histogram[k];
+			sum += k * histogram[k];
+		}
+		return n == 0 ? 0 : sum / (double) n;
+	}
+
+	/**
+	 * Returns the longest run of occupied slots (PROBE) or the longest chain
+	 * (CHAIN).
+	 */
+	public int longestCluster() {
+		return longestCluster;
+	}
+
+	public long resizeCount() {
+		return resizes;
+	}
+
+	/**
+	 * Returns the total time spent in resize(), in nanoseconds.
+	 */
+	public long resizeNanos() {
+		return resizeNanos;
+	}
+
+	/**
+	 * Returns the stats as one line of name=value pairs, for logging or
+	 * scraping.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(table);
+		sb.append(" kind=").append(kind);
+		sb.append(" size=").append(size);
+		sb.append(" capacity=").append(capacity);
+		sb.append(String.format(" load=%.3f", loadFactor()));
+		sb.append(String.format(" meanLength=%.3f", meanLength()));
+		sb.append(" maxLength=").append(maxLength());
+		sb.append(" longestCluster=").append(longestCluster);
+		sb.append(" resizes=").append(resizes);
+		sb.append(String.format(" resizeMillis=%.3f", resizeNanos / 1e6));
+		sb.append(" histogram=").append(Arrays.toString(histogram));
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,275 @@
+package hashes;
+
+import java.util.Arrays;
+
+/**
+ * Primitive int to int map using open addressing (linear probing) over
+ * parallel int arrays.
+ *
+ * Unlike LinkedHashMap, no entry objects are allocated: keys and values live
+ * in two int[] arrays, so each pair costs about 8 bytes divided by the load
+ * factor. The key 0 marks a free slot, so a pair with key 0 is kept outside of
+ * the arrays. Deletion shifts the rest of the cluster back instead of leaving
+ * tombstones, so lookups never walk over deleted slots.
+ *
+ * Every value is legal. get() returns the configurable "no entry" value for a
+ * missing key; use containsKey() to tell a stored value apart from it.
+ */
+public class IntIntHashMap {
+	private static final int INIT_CAPACITY = 16;
+	private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+	private static final int FREE_KEY = 0;
+
+	private int[] keys; // the keys, FREE_KEY marks an empty slot
+	private int[] vals; // the values
+	private int mask; // capacity - 1, capacity is a power of two
+	private int numberOfPairs; // pairs stored in the arrays
+	private int threshold; // resize when numberOfPairs reaches this
+
+	private final float loadFactor;
+	private final int noEntryValue;
+
+	private boolean hasFreeKey; // is the key 0 present?
+	private int freeKeyValue; // value of the key 0
+
+	public IntIntHashMap() {
+		this(INIT_CAPACITY, DEFAULT_LOAD_FACTOR, -1);
+	}
+
+	public IntIntHashMap(int expectedSize) {
+		this(expectedSize, DEFAULT_LOAD_FACTOR, -1);
+	}
+
+	/**
+	 * Initializes an empty map that holds expectedSize pairs without
+	 * resizing.
+	 *
+	 * @param expectedSize
+	 *            the number of pairs to make room for
+	 * @param loadFactor
+	 *            the maximum fill ratio of the arrays, in (0, 1)
+	 * @param noEntryValue
+	 *            the value get() returns for a missing key
+	 * @throws IllegalArgumentException
+	 *             if expectedSize is negative or loadFactor is out of range
+	 */
+	public IntIntHashMap(int expectedSize, float loadFactor, int noEntryValue) {
+		if (expectedSize < 0)
+			throw new IllegalArgumentException("expected size must be non-negative");
+		if (!(loadFactor > 0 && loadFactor < 1))
+			throw new IllegalArgumentException("load factor must be in (0, 1)");
+		this.loadFactor = loadFactor;
+		this.noEntryValue = noEntryValue;
+		allocate(tableSizeFor(expectedSize, loadFactor));
+	}
+
+	// smallest power of two capacity that holds n pairs under the load factor
+	private static int tableSizeFor(int n, float loadFactor) {
+		long needed = (long) Math.ceil(n / (double) loadFactor) + 1;
+		if (needed > 1 << 30)
+			throw new IllegalArgumentException("expected size too large: " + n);
+		int capacity = 2;
+		while (capacity < needed)
+			capacity <<= 1;
+		return capacity;
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		vals = new int[capacity];
+		mask = capacity - 1;
+		threshold = Math.min(capacity - 1, (int) (capacity * loadFactor));
+	}
+
+	// spreads the bits of the key so consecutive ids do not form clusters
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	public int size() {
+		return hasFreeKey ? numberOfPairs + 1 : numberOfPairs;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Returns the value that get() and remove() report for a missing key.
+	 */
+	public int noEntryValue() {
+		return noEntryValue;
+	}
+
+	public boolean containsKey(int key) {
+		if (key == FREE_KEY)
+			return hasFreeKey;
+		return indexOf(key) >= 0;
+	}
+
+	// slot of the key, or -1 if the key is not in the arrays
+	private int indexOf(int key) {
+		for (int i = mix(key) & mask;; i = (i + 1) & mask) {
+			int k = keys[i];
+			if (k == key)
+				return i;
+			if (k == FREE_KEY)
+				return -1;
+		}
+	}
+
+	/**
+	 * Returns the value associated with the key, or noEntryValue() if the key
+	 * is not in the map.
+	 */
+	public int get(int key) {
+		if (key == FREE_KEY)
+			return hasFreeKey ? freeKeyValue : noEntryValue;
+		int i = indexOf(key);
+		return i >= 0 ? vals[i] : noEntryValue;
+	}
+
+	/**
+	 * Returns the value associated with the key, or defaultValue if the key is
+	 * not in the map.
+	 */
+	public int getOrDefault(int key, int defaultValue) {
+		if (key == FREE_KEY)
+			return hasFreeKey ? freeKeyValue : defaultValue;
+		int i = indexOf(key);
+		return i >= 0 ? vals[i] : defaultValue;
+	}
+
+	/**
+	 * Associates the value with the key and returns the previous value, or
+	 * noEntryValue() if the key was not in the map.
+	 */
+	public int put(int key, int value) {
+		if (key == FREE_KEY) {
+			int previous = hasFreeKey ? freeKeyValue : noEntryValue;
+			hasFreeKey = true;
+			freeKeyValue = value;
+			return previous;
+		}
+
+		int i;
+		for (i = mix(key) & mask; keys[i] != FREE_KEY; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				int previous = vals[i];
+				vals[i] = value;
+				return previous;
+			}
+		}
+		keys[i] = key;
+		vals[i] = value;
+		if (++numberOfPairs >= threshold)
+			resize(keys.length * 2);
+		return noEntryValue;
+	}
+
+	/**
+	 * Adds delta to the value of the key, treating a missing key as 0, and
+	 * returns the new value.
+	 */
+	public int addTo(int key, int delta) {
+		if (key == FREE_KEY) {
+			freeKeyValue = hasFreeKey ? freeKeyValue + delta : delta;
+			hasFreeKey = true;
+			return freeKeyValue;
+		}
+
+		int i;
+		for (i = mix(key) & mask; keys[i] != FREE_KEY; i = (i + 1) & mask) {
+			if (keys[i] == key)
+				return vals[i] += delta;
+		}
+		keys[i] = key;
+		vals[i] = delta;
+		if (++numberOfPairs >= threshold)
+			resize(keys.length * 2);
+		return delta;
+	}
+
+	/**
+	 * Removes the key and returns its value, or noEntryValue() if the key was
+	 * not in the map.
+	 */
+	public int remove(int key) {
+		if (key == FREE_KEY) {
+			if (!hasFreeKey)
+				return noEntryValue;
+			hasFreeKey = false;
+			return freeKeyValue;
+		}
+
+		int i = indexOf(key);
+		if (i < 0)
+			return noEntryValue;
+		int previous = vals[i];
+		shiftKeys(i);
+		numberOfPairs--;
+		return previous;
+	}
+
+	// backward shift deletion: close the hole at slot i by moving back every
+	// key of the cluster whose home slot does not lie between the hole and it
+	private void shiftKeys(int i) {
+		for (int j = (i + 1) & mask;; j = (j + 1) & mask) {
+			int k = keys[j];
+			if (k == FREE_KEY)
+				break;
+			int home = mix(k) & mask;
+			// move k back unless its home is cyclically in (i, j]
+			if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+				keys[i] = k;
+				vals[i] = vals[j];
+				i = j;
+			}
+		}
+		keys[i] = FREE_KEY;
+		vals[i] = 0;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, FREE_KEY);
+		Arrays.fill(vals, 0);
+		numberOfPairs = 0;
+		hasFreeKey = false;
+	}
+
+	// capacity is keys.length * 2, which overflows to a negative number once
+	// the table has reached 1 << 30 slots
+	private void resize(int capacity) {
+		if (capacity <= 0 || capacity > 1 << 30)
+			throw new IllegalStateException("map is full");
+		int[] oldKeys = keys;
+		int[] oldVals = vals;
+		allocate(capacity);
+		for (int j = 0; j < oldKeys.length; j++) {
+			int k = oldKeys[j];
+			if (k == FREE_KEY)
+				continue;
+			int i = mix(k) & mask;
+			while (keys[i] != FREE_KEY)
+				i = (i + 1) & mask;
+			keys[i] = k;
+			vals[i] = oldVals[j];
+		}
+	}
+
+	/**
+	 * Returns all keys in this map in table order.
+	 */
+	public int[] keys() {
+		int[] result = new int[size()];
+		int n = 0;
+		if (hasFreeKey)
+			result[n++] = FREE_KEY;
+		for (int i = 0; i < keys.length; i++)
+			if (keys[i] != FREE_KEY)
+				result[n++] = keys[i];
+		return result;
+	}
+
+}
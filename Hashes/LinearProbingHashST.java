@@ -1,20 +1,109 @@
 package hashes;
 
-import java.util.Iterator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import queue.Queue;
 
 /**
  * Collision resolution by linear probing (open addressing)
+ *
+ * In incremental mode a resize does not rehash the whole table at once.
+ * The old arrays are kept next to the new ones and every put(), get() and
+ * delete() moves the next REHASH_STEPS old slots across, so no single
+ * operation pays for the whole rehash. Until the old table is drained,
+ * lookups check the new table first and then the old one. A key copied or
+ * overwritten into the new table keeps its old slot, with a null value, so
+ * the probe sequences of the other old keys stay intact. A shrink waits
+ * until the old table is drained, so a resize never has to finish one.
+ *
+ * The hash code of each key is kept in a parallel int array. Probes compare
+ * it before calling equals(), and resizes reuse it instead of calling
+ * hashCode() again.
+ *
+ * getAll() and putAll() take a batch of keys in caller-supplied arrays and
+ * allocate nothing per key. They are plain loops over get() and put():
+ * advancing the probes of a whole batch together measured no faster than a
+ * get() loop, as the CPU already overlaps the cache misses of independent
+ * lookups. Outside incremental mode putAll() grows the table once for the
+ * whole batch.
+ *
+ * bulkLoad() builds the table in parallel at its final size. The slots are
+ * split into contiguous regions, the pairs are grouped by the region of
+ * their home slot, and one fork-join task per region places its pairs
+ * without leaving the region. A probe that would run past the end of its
+ * region is set aside and placed afterwards by an ordinary sequential
+ * probe, which only fills empty slots and so cannot break the clusters
+ * already built. Large non-incremental resizes use the same path.
+ *
+ * forEach() and cursor() walk the slot array in place, handing out keys and
+ * values without copying them into a queue. Both fail fast if a key is added
+ * or removed during the walk. In incremental mode, starting a walk finishes
+ * any rehash in progress, so that lookups made during the walk do not move
+ * slots under it.
+ *
+ * writeSnapshot() streams the pairs to a file as length-prefixed records,
+ * encoded by a Codec for the keys and one for the values, in blocks of about
+ * SNAPSHOT_BLOCK bytes that may be deflated. readSnapshot() sizes the table
+ * from the header and places each record straight into its slot, so a
+ * restore of an uncompressed snapshot never resizes. Every length read from
+ * the file is checked against the bytes left in it before anything is
+ * allocated, so a corrupt or truncated file fails with an IOException; as
+ * the record count of a deflated snapshot cannot be checked that way, its
+ * table is presized to at most one pair per stored byte and grows from
+ * there if it has to.
+ *
+ * stats() reports the probe length histogram, the longest cluster and the
+ * number and duration of resizes, for monitoring.
  */
 public class LinearProbingHashST<Key, Value> {
 	private static final int INIT_CAPACITY = 4;
+	private static final int REHASH_STEPS = 8; // old slots moved per operation
+	private static final int PARALLEL_THRESHOLD = 1 << 16; // smaller resizes stay sequential
+	private static final int MIN_REGION = 1 << 14; // fewest slots per parallel region
+
+	// snapshot file: header of magic, version, flags, capacity and number of
+	// pairs, then blocks of raw length, stored length and the stored bytes,
+	// ended by a block of raw length 0. A block holds records of key length,
+	// key, value length and value.
+	private static final int SNAPSHOT_MAGIC = 0x4C504854; // "LPHT"
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final int SNAPSHOT_DEFLATED = 1; // flag: blocks are deflated
+	private static final int SNAPSHOT_INCREMENTAL = 2; // flag: table resizes incrementally
+	private static final int SNAPSHOT_BLOCK = 1 << 16; // raw bytes per block, roughly
 
 	private int numberOfPairs; // number of key-value pairs
 	private int sizeLPTable; // size of linear probing table
 	private Key[] keys; // the keys
 	private Value[] vals; // the values
+	private int[] hashes; // hash code of each key
+
+	private final boolean incremental; // rehash a few slots per operation?
+	private Key[] oldKeys; // table being drained, null if no rehash is running
+	private Value[] oldVals; // null value marks a moved or deleted key
+	private int[] oldHashes; // hash codes of the old keys
+	private int oldSize; // size of the table being drained
+	private int rehashIndex; // next old slot to move
+	private int modCount; // structural modifications, for fail-fast walks
+	private long resizes; // number of resizes and bulk loads
+	private long resizeNanos; // time spent in them
 
 	public LinearProbingHashST() {
 		this(INIT_CAPACITY);
@@ -24,10 +113,20 @@ public class LinearProbingHashST<Key, Value> {
 	 * Initializes an empty symbol table with the specified initial capacity.
 	 */
 	public LinearProbingHashST(int capacity) {
+		this(capacity, false);
+	}
+
+	/**
+	 * Initializes an empty symbol table with the specified initial capacity.
+	 * If incremental is true, resizes are spread over later operations.
+	 */
+	public LinearProbingHashST(int capacity, boolean incremental) {
 		sizeLPTable = capacity;
 		numberOfPairs = 0;
 		keys = (Key[]) new Object[sizeLPTable];
 		vals = (Value[]) new Object[sizeLPTable];
+		hashes = new int[sizeLPTable];
+		this.incremental = incremental;
 	}
 
 	/**
@@ -51,22 +150,99 @@ public class LinearProbingHashST<Key, Value> {
 	}
 
 	// hash function for keys - returns value between 0 and M-1
-	private int hash(Key key) {
-		return (key.hashCode() & 0x7fffffff) % sizeLPTable;
+	private int hash(int h) {
+		return (h & 0x7fffffff) % sizeLPTable;
 	}
 
-	// resizes the hash table to the given capacity by re-hashing all of the
-	// keys
+	// resizes the hash table to the given capacity and counts the resize
 	private void resize(int capacity) {
-		LinearProbingHashST<Key, Value> temp = new LinearProbingHashST<Key, Value>(capacity);
-		for (int i = 0; i < sizeLPTable; i++) {
-			if (keys[i] != null) {
-				temp.put(keys[i], vals[i]);
+		long start = System.nanoTime();
+		modCount++;
+		rehashInto(capacity);
+		resizes++;
+		resizeNanos += System.nanoTime() - start;
+	}
+
+	// re-hashes all of the keys into a table of the given capacity, or in
+	// incremental mode starts draining the current table into a new one
+	private void rehashInto(int capacity) {
+		if (incremental) {
+			// growth comes at least oldSize / 8 operations after the last
+			// resize and shrinking waits for the drain, so none is left here
+			assert !rehashing() : "resize found old slots left to drain";
+			finishRehash();
+			oldKeys = keys;
+			oldVals = vals;
+			oldHashes = hashes;
+			oldSize = sizeLPTable;
+			rehashIndex = 0;
+			sizeLPTable = capacity;
+			keys = (Key[]) new Object[capacity];
+			vals = (Value[]) new Object[capacity];
+			hashes = new int[capacity];
+			return;
+		}
+		if (numberOfPairs >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+			build(keys, vals, hashes, keys.length, capacity);
+			return;
+		}
+		Key[] tempKeys = keys;
+		Value[] tempVals = vals;
+		int[] tempHashes = hashes;
+		sizeLPTable = capacity;
+		keys = (Key[]) new Object[capacity];
+		vals = (Value[]) new Object[capacity];
+		hashes = new int[capacity];
+		for (int i = 0; i < tempKeys.length; i++) {
+			if (tempKeys[i] != null) {
+				place(tempKeys[i], tempVals[i], tempHashes[i]);
 			}
 		}
-		keys = temp.keys;
-		vals = temp.vals;
-		sizeLPTable = temp.sizeLPTable;
+	}
+
+	// is an incremental rehash in progress?
+	private boolean rehashing() {
+		return oldKeys != null;
+	}
+
+	// moves up to REHASH_STEPS old slots into the new table
+	private void rehashStep() {
+		for (int n = 0; n < REHASH_STEPS && rehashing(); n++) {
+			int i = rehashIndex++;
+			if (oldVals[i] != null) {
+				place(oldKeys[i], oldVals[i], oldHashes[i]);
+				oldVals[i] = null;
+			}
+			if (rehashIndex == oldSize) {
+				oldKeys = null;
+				oldVals = null;
+				oldHashes = null;
+			}
+		}
+	}
+
+	// moves every remaining old slot into the new table
+	private void finishRehash() {
+		while (rehashing())
+			rehashStep();
+	}
+
+	// slot of a live key with hash code h in the old table, or -1
+	private int oldIndexOf(Key key, int h) {
+		for (int i = (h & 0x7fffffff) % oldSize; oldKeys[i] != null; i = (i + 1) % oldSize)
+			if (oldHashes[i] == h && oldKeys[i].equals(key))
+				return oldVals[i] != null ? i : -1;
+		return -1;
+	}
+
+	// stores a key known to be absent from the new table, without resizing
+	private void place(Key key, Value val, int h) {
+		int i;
+		for (i = hash(h); keys[i] != null; i = (i + 1) % sizeLPTable)
+			;
+		keys[i] = key;
+		vals[i] = val;
+		hashes[i] = h;
 	}
 
 	/**
@@ -91,19 +267,34 @@ public class LinearProbingHashST<Key, Value> {
 			return;
 		}
 
+		if (rehashing())
+			rehashStep();
+
 		// double table size if 50% full
 		if (numberOfPairs >= sizeLPTable / 2)
 			resize(2 * sizeLPTable);
 
+		int h = key.hashCode();
 		int i;
-		for (i = hash(key); keys[i] != null; i = (i + 1) % sizeLPTable) {
-			if (keys[i].equals(key)) {
+		for (i = hash(h); keys[i] != null; i = (i + 1) % sizeLPTable) {
+			if (hashes[i] == h && keys[i].equals(key)) {
 				vals[i] = val;
 				return;
 			}
 		}
 		keys[i] = key;
 		vals[i] = val;
+		hashes[i] = h;
+		modCount++;
+
+		// a key not yet moved out of the old table is replaced, not added
+		if (rehashing()) {
+			int j = oldIndexOf(key, h);
+			if (j >= 0) {
+				oldVals[j] = null;
+				return;
+			}
+		}
 		numberOfPairs++;
 	}
 
@@ -113,9 +304,279 @@ public class LinearProbingHashST<Key, Value> {
 	public Value get(Key key) {
 		if (key == null)
 			throw new IllegalArgumentException("argument to get() is null");
-		for (int i = hash(key); keys[i] != null; i = (i + 1) % sizeLPTable)
-			if (keys[i].equals(key))
+		if (rehashing())
+			rehashStep();
+		return lookup(key);
+	}
+
+	/**
+	 * Looks up a batch of keys and stores the value of keys[j], or null, in
+	 * out[j].
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a key is null or out is shorter than keys
+	 */
+	public void getAll(Key[] keys, Value[] out) {
+		int n = keys.length;
+		if (out.length < n)
+			throw new IllegalArgumentException("output array is shorter than the keys");
+		for (int j = 0; j < n; j++) {
+			if (keys[j] == null)
+				throw new IllegalArgumentException("argument to getAll() contains null");
+			out[j] = get(keys[j]);
+		}
+	}
+
+	/**
+	 * Inserts a batch of key-value pairs, as put(keys[j], vals[j]) for each j
+	 * in order; a null value deletes its key.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a key is null or vals is shorter than keys
+	 */
+	public void putAll(Key[] keys, Value[] vals) {
+		int n = keys.length;
+		if (vals.length < n)
+			throw new IllegalArgumentException("value array is shorter than the keys");
+		for (int j = 0; j < n; j++)
+			if (keys[j] == null)
+				throw new IllegalArgumentException("argument to putAll() contains null");
+
+		// grow once for the whole batch; an incremental table spreads its
+		// resizes over the puts instead
+		if (!incremental) {
+			int capacity = sizeLPTable;
+			while ((long) numberOfPairs + n >= capacity / 2 && capacity < 1 << 30)
+				capacity *= 2;
+			if (capacity != sizeLPTable)
+				resize(capacity);
+		}
+		for (int j = 0; j < n; j++)
+			put(keys[j], vals[j]);
+	}
+
+	/**
+	 * Inserts all the pairs, as put(keys[j], vals[j]) for each j in order,
+	 * but grows the table once to its final size and places the pairs in
+	 * parallel on the common fork-join pool.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a key or value is null or vals is shorter than keys
+	 */
+	public void bulkLoad(Key[] keys, Value[] vals) {
+		int n = keys.length;
+		if (vals.length < n)
+			throw new IllegalArgumentException("value array is shorter than the keys");
+		finishRehash();
+
+		// the pairs already in the table go first, so the new values win
+		int total = numberOfPairs + n;
+		Key[] srcKeys = (Key[]) new Object[total];
+		Value[] srcVals = (Value[]) new Object[total];
+		int[] srcHashes = new int[total];
+		int m = 0;
+		for (int i = 0; i < sizeLPTable; i++) {
+			if (this.keys[i] != null) {
+				srcKeys[m] = this.keys[i];
+				srcVals[m] = this.vals[i];
+				srcHashes[m] = hashes[i];
+				m++;
+			}
+		}
+		int existing = m;
+		int chunks = chunks(n);
+		int step = (n + chunks - 1) / chunks;
+		forEachTask(chunks, c -> {
+			for (int j = c * step; j < Math.min(n, (c + 1) * step); j++) {
+				if (keys[j] == null || vals[j] == null)
+					throw new IllegalArgumentException("argument to bulkLoad() contains null");
+				srcKeys[existing + j] = keys[j];
+				srcVals[existing + j] = vals[j];
+				srcHashes[existing + j] = keys[j].hashCode();
+			}
+		});
+
+		int capacity = sizeLPTable;
+		while ((long) total >= capacity / 2 && capacity < 1 << 30)
+			capacity *= 2;
+		long start = System.nanoTime();
+		modCount++;
+		build(srcKeys, srcVals, srcHashes, total, capacity);
+		resizes++;
+		resizeNanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * Inserts all the pairs in iteration order, as bulkLoad(Key[], Value[]).
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a key or value is null
+	 */
+	public void bulkLoad(Iterable<? extends Map.Entry<? extends Key, ? extends Value>> pairs) {
+		// one pass, so a source that can only be iterated once works too
+		Key[] keys = (Key[]) new Object[16];
+		Value[] vals = (Value[]) new Object[16];
+		int n = 0;
+		for (Map.Entry<? extends Key, ? extends Value> pair : pairs) {
+			if (n == keys.length) {
+				if (n == Integer.MAX_VALUE - 8)
+					throw new IllegalArgumentException("too many pairs for bulkLoad()");
+				int length = (int) Math.min(Integer.MAX_VALUE - 8, 2L * n);
+				keys = Arrays.copyOf(keys, length);
+				vals = Arrays.copyOf(vals, length);
+			}
+			keys[n] = pair.getKey();
+			vals[n] = pair.getValue();
+			n++;
+		}
+		bulkLoad(Arrays.copyOf(keys, n), Arrays.copyOf(vals, n));
+	}
+
+	// replaces the table by one of the given capacity holding the first n
+	// source pairs; null source keys are skipped and a later duplicate of a
+	// key replaces the value of an earlier one
+	private void build(Key[] srcKeys, Value[] srcVals, int[] srcHashes, int n, int capacity) {
+		int regions = Math.max(1, Math.min(capacity / MIN_REGION, 4 * ForkJoinPool.getCommonPoolParallelism()));
+		int chunks = chunks(n);
+		int step = (n + chunks - 1) / chunks;
+
+		// count the pairs of every chunk of the source by region
+		int[] regionOf = new int[n];
+		int[][] counts = new int[chunks][regions];
+		forEachTask(chunks, c -> {
+			for (int i = c * step; i < Math.min(n, (c + 1) * step); i++) {
+				if (srcKeys[i] == null)
+					continue;
+				int home = (srcHashes[i] & 0x7fffffff) % capacity;
+				int r = (int) ((long) home * regions / capacity);
+				regionOf[i] = r;
+				counts[c][r]++;
+			}
+		});
+
+		// group the pairs by region, keeping the source order within each
+		int[] regionStart = new int[regions + 1];
+		int[][] offsets = new int[chunks][regions];
+		int position = 0;
+		for (int r = 0; r < regions; r++) {
+			regionStart[r] = position;
+			for (int c = 0; c < chunks; c++) {
+				offsets[c][r] = position;
+				position += counts[c][r];
+			}
+		}
+		regionStart[regions] = position;
+		int[] order = new int[position];
+		forEachTask(chunks, c -> {
+			int[] next = offsets[c];
+			for (int i = c * step; i < Math.min(n, (c + 1) * step); i++)
+				if (srcKeys[i] != null)
+					order[next[regionOf[i]]++] = i;
+		});
+
+		// place each region's pairs inside it; a pair whose probe reaches the
+		// end of the region is marked as overflow by complementing its index
+		Key[] newKeys = (Key[]) new Object[capacity];
+		Value[] newVals = (Value[]) new Object[capacity];
+		int[] newHashes = new int[capacity];
+		int[] placed = new int[regions];
+		forEachTask(regions, r -> {
+			int end = (int) (((long) (r + 1) * capacity + regions - 1) / regions);
+			int count = 0;
+			for (int p = regionStart[r]; p < regionStart[r + 1]; p++) {
+				int i = order[p];
+				int h = srcHashes[i];
+				int j;
+				for (j = (h & 0x7fffffff) % capacity; j < end && newKeys[j] != null; j++)
+					if (newHashes[j] == h && newKeys[j].equals(srcKeys[i]))
+						break;
+				if (j == end) {
+					order[p] = ~i;
+				} else {
+					if (newKeys[j] == null) {
+						newKeys[j] = srcKeys[i];
+						newHashes[j] = h;
+						count++;
+					}
+					newVals[j] = srcVals[i];
+				}
+			}
+			placed[r] = count;
+		});
+
+		int pairs = 0;
+		for (int r = 0; r < regions; r++)
+			pairs += placed[r];
+		for (int p = 0; p < order.length; p++) {
+			if (order[p] >= 0)
+				continue;
+			int i = ~order[p];
+			int h = srcHashes[i];
+			int j;
+			for (j = (h & 0x7fffffff) % capacity; newKeys[j] != null; j = (j + 1) % capacity)
+				if (newHashes[j] == h && newKeys[j].equals(srcKeys[i]))
+					break;
+			if (newKeys[j] == null) {
+				newKeys[j] = srcKeys[i];
+				newHashes[j] = h;
+				pairs++;
+			}
+			newVals[j] = srcVals[i];
+		}
+
+		keys = newKeys;
+		vals = newVals;
+		hashes = newHashes;
+		sizeLPTable = capacity;
+		numberOfPairs = pairs;
+	}
+
+	// number of chunks the source of a build is split into
+	private static int chunks(int n) {
+		return Math.max(1, Math.min(n / 4096, 4 * ForkJoinPool.getCommonPoolParallelism()));
+	}
+
+	// runs task(0) .. task(n - 1) on the common fork-join pool
+	private static void forEachTask(int n, IntConsumer task) {
+		if (n == 1)
+			task.accept(0);
+		else
+			ForkJoinPool.commonPool().invoke(new RangeTask(0, n, task));
+	}
+
+	private static final class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int lo, hi;
+		private final IntConsumer task;
+
+		RangeTask(int lo, int hi, IntConsumer task) {
+			this.lo = lo;
+			this.hi = hi;
+			this.task = task;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo == 1) {
+				task.accept(lo);
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new RangeTask(lo, mid, task), new RangeTask(mid, hi, task));
+		}
+	}
+
+	// searches the new table, then the old one, without moving any slots
+	private Value lookup(Key key) {
+		int h = key.hashCode();
+		for (int i = hash(h); keys[i] != null; i = (i + 1) % sizeLPTable)
+			if (hashes[i] == h && keys[i].equals(key))
 				return vals[i];
+		if (rehashing()) {
+			int j = oldIndexOf(key, h);
+			if (j >= 0)
+				return oldVals[j];
+		}
 		return null;
 	}
 
@@ -126,14 +587,28 @@ public class LinearProbingHashST<Key, Value> {
 	public void delete(Key key) {
 		if (key == null)
 			throw new IllegalArgumentException("argument to delete() is null");
-		if (!contains(key))
-			return;
+		if (rehashing())
+			rehashStep();
+		int h = key.hashCode();
+		if (rehashing()) {
+			int j = oldIndexOf(key, h);
+			if (j >= 0) {
+				// not moved yet: the key cannot also be in the new table
+				oldVals[j] = null;
+				numberOfPairs--;
+				modCount++;
+				shrinkIfSparse();
+				return;
+			}
+		}
 
 		// find position i of key
-		int i = hash(key);
-		while (!key.equals(keys[i])) {
-			i = (i + 1) % sizeLPTable;
-		}
+		int i;
+		for (i = hash(h); keys[i] != null; i = (i + 1) % sizeLPTable)
+			if (hashes[i] == h && keys[i].equals(key))
+				break;
+		if (keys[i] == null)
+			return;
 
 		// delete key and associated value
 		keys[i] = null;
@@ -147,18 +622,25 @@ public class LinearProbingHashST<Key, Value> {
 			Value valToRehash = vals[i];
 			keys[i] = null;
 			vals[i] = null;
-			numberOfPairs--;
-			put(keyToRehash, valToRehash);
+			place(keyToRehash, valToRehash, hashes[i]);
 			i = (i + 1) % sizeLPTable;
 		}
 
 		numberOfPairs--;
+		modCount++;
+		shrinkIfSparse();
+
+		assert check();
+	}
 
-		// halves size of array if it's 12.5% full or less
+	private void shrinkIfSparse() {
+		// halves size of array if it's 12.5% full or less; an incremental
+		// rehash still draining would have to be finished in one go, so a
+		// later delete retries once it is done
+		if (rehashing())
+			return;
 		if (numberOfPairs > 0 && numberOfPairs <= sizeLPTable / 8)
 			resize(sizeLPTable / 2);
-
-		assert check();
 	}
 
 	/**
@@ -169,15 +651,401 @@ public class LinearProbingHashST<Key, Value> {
 		for (int i = 0; i < sizeLPTable; i++)
 			if (keys[i] != null)
 				queue.enqueue(keys[i]);
+		if (rehashing())
+			for (int i = rehashIndex; i < oldSize; i++)
+				if (oldVals[i] != null)
+					queue.enqueue(oldKeys[i]);
 		return queue;
 	}
 
+	/**
+	 * Passes every key and its value to the action, without allocating.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if action is null
+	 * @throws ConcurrentModificationException
+	 *             if the action adds or removes a key
+	 */
+	public void forEach(BiConsumer<? super Key, ? super Value> action) {
+		if (action == null)
+			throw new IllegalArgumentException("argument to forEach() is null");
+		finishRehash();
+		int expectedModCount = modCount;
+		Key[] keys = this.keys;
+		Value[] vals = this.vals;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				action.accept(keys[i], vals[i]);
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+			}
+		}
+	}
+
+	/**
+	 * Returns a cursor over the entries of this symbol table; reset() makes
+	 * it reusable for later scans.
+	 */
+	public EntryCursor<Key, Value> cursor() {
+		return new Cursor();
+	}
+
+	// walks the slots of the table as it was when created or last reset
+	private class Cursor implements EntryCursor<Key, Value> {
+		private Key[] keys;
+		private Value[] vals;
+		private int slot; // current slot, or -1 before the first
+		private int expectedModCount;
+
+		Cursor() {
+			reset();
+		}
+
+		public boolean next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			while (++slot < keys.length)
+				if (keys[slot] != null)
+					return true;
+			slot = keys.length;
+			return false;
+		}
+
+		public Key key() {
+			if (slot < 0 || slot >= keys.length)
+				throw new IllegalStateException("cursor is not on an entry");
+			return keys[slot];
+		}
+
+		public Value value() {
+			if (slot < 0 || slot >= keys.length)
+				throw new IllegalStateException("cursor is not on an entry");
+			return vals[slot];
+		}
+
+		public void reset() {
+			finishRehash();
+			keys = LinearProbingHashST.this.keys;
+			vals = LinearProbingHashST.this.vals;
+			slot = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	/**
+	 * Writes a snapshot of this symbol table to the file, replacing it.
+	 *
+	 * @param compress
+	 *            deflate each block
+	 */
+	public void writeSnapshot(Path file, Codec<? super Key> keyCodec, Codec<? super Value> valueCodec,
+			boolean compress) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeSnapshot(channel, keyCodec, valueCodec, compress);
+		}
+	}
+
+	/**
+	 * Writes a snapshot of this symbol table at the channel's position. The
+	 * pairs are encoded straight from the slots into a reused block buffer.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a codec is null
+	 */
+	public void writeSnapshot(FileChannel channel, Codec<? super Key> keyCodec, Codec<? super Value> valueCodec,
+			boolean compress) throws IOException {
+		if (keyCodec == null || valueCodec == null)
+			throw new IllegalArgumentException("codecs must not be null");
+		finishRehash();
+		ByteBuffer header = ByteBuffer.allocate(20);
+		header.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION)
+				.putInt((compress ? SNAPSHOT_DEFLATED : 0) | (incremental ? SNAPSHOT_INCREMENTAL : 0))
+				.putInt(sizeLPTable).putInt(numberOfPairs);
+		header.flip();
+		writeFully(channel, header);
+
+		SnapshotBuffer block = new SnapshotBuffer(SNAPSHOT_BLOCK + 1024);
+		DataOutputStream blockOut = new DataOutputStream(block);
+		SnapshotBuffer record = new SnapshotBuffer(256);
+		DataOutputStream recordOut = new DataOutputStream(record);
+		Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+		byte[] stored = new byte[0];
+		try {
+			for (int i = 0; i < sizeLPTable; i++) {
+				if (keys[i] == null)
+					continue;
+				record.reset();
+				keyCodec.encode(keys[i], recordOut);
+				blockOut.writeInt(record.size());
+				record.writeTo(blockOut);
+				record.reset();
+				valueCodec.encode(vals[i], recordOut);
+				blockOut.writeInt(record.size());
+				record.writeTo(blockOut);
+				if (block.size() >= SNAPSHOT_BLOCK) {
+					stored = writeBlock(channel, block, deflater, stored);
+					block.reset();
+				}
+			}
+			if (block.size() > 0)
+				writeBlock(channel, block, deflater, stored);
+		} finally {
+			if (deflater != null)
+				deflater.end();
+		}
+		ByteBuffer end = ByteBuffer.allocate(8);
+		writeFully(channel, end);
+	}
+
+	// writes one block, deflated if a deflater is given, and returns the
+	// scratch array for the next one
+	private static byte[] writeBlock(FileChannel channel, SnapshotBuffer block, Deflater deflater, byte[] stored)
+			throws IOException {
+		int rawLength = block.size();
+		byte[] bytes = block.array();
+		int storedLength = rawLength;
+		if (deflater != null) {
+			deflater.reset();
+			deflater.setInput(bytes, 0, rawLength);
+			deflater.finish();
+			storedLength = 0;
+			if (stored.length < rawLength + 64)
+				stored = new byte[rawLength + rawLength / 8 + 64];
+			while (!deflater.finished()) {
+				if (storedLength == stored.length)
+					stored = Arrays.copyOf(stored, 2 * stored.length);
+				storedLength += deflater.deflate(stored, storedLength, stored.length - storedLength);
+			}
+			bytes = stored;
+		}
+		ByteBuffer header = ByteBuffer.allocate(8);
+		header.putInt(rawLength).putInt(storedLength);
+		header.flip();
+		writeFully(channel, header);
+		writeFully(channel, ByteBuffer.wrap(bytes, 0, storedLength));
+		return stored;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	/**
+	 * Restores a symbol table from a snapshot file.
+	 *
+	 * @throws IOException
+	 *             if the file is not a snapshot, is truncated, or a codec
+	 *             does not read back the bytes it wrote
+	 */
+	public static <K, V> LinearProbingHashST<K, V> readSnapshot(Path file, Codec<? extends K> keyCodec,
+			Codec<? extends V> valueCodec) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return readSnapshot(channel, keyCodec, valueCodec);
+		}
+	}
+
+	/**
+	 * Restores a symbol table from a snapshot at the channel's position. The
+	 * table is created at its final capacity and every record is placed in
+	 * its slot as it is decoded.
+	 */
+	public static <K, V> LinearProbingHashST<K, V> readSnapshot(FileChannel channel, Codec<? extends K> keyCodec,
+			Codec<? extends V> valueCodec) throws IOException {
+		if (keyCodec == null || valueCodec == null)
+			throw new IllegalArgumentException("codecs must not be null");
+		ByteBuffer header = ByteBuffer.allocate(20);
+		readFully(channel, header);
+		header.flip();
+		if (header.getInt() != SNAPSHOT_MAGIC)
+			throw new IOException("not a LinearProbingHashST snapshot");
+		int version = header.getInt();
+		if (version != SNAPSHOT_VERSION)
+			throw new IOException("unsupported snapshot version " + version);
+		int flags = header.getInt();
+		int capacity = header.getInt();
+		int count = header.getInt();
+		if (count < 0 || capacity <= 0 || capacity > 1 << 30 || count >= 1 << 29)
+			throw new IOException("corrupt snapshot header");
+		boolean deflated = (flags & SNAPSHOT_DEFLATED) != 0;
+
+		// every record takes at least its two lengths, 8 bytes, unless deflated
+		long remaining = channel.size() - channel.position();
+		if (!deflated && (long) count * 8 > remaining)
+			throw new IOException("snapshot is truncated");
+		int presized = (int) Math.min(count, deflated ? remaining : remaining / 8);
+		int needed = INIT_CAPACITY;
+		while (presized >= needed / 2)
+			needed *= 2;
+		// keep the writer's capacity unless it is far beyond what the file holds
+		if (capacity < needed || capacity > 8L * needed)
+			capacity = needed;
+
+		LinearProbingHashST<K, V> st = new LinearProbingHashST<K, V>(capacity, (flags & SNAPSHOT_INCREMENTAL) != 0);
+		Inflater inflater = deflated ? new Inflater() : null;
+		byte[] stored = new byte[0];
+		byte[] raw = new byte[0];
+		ByteBuffer blockHeader = ByteBuffer.allocate(8);
+		try {
+			for (;;) {
+				blockHeader.clear();
+				readFully(channel, blockHeader);
+				blockHeader.flip();
+				int rawLength = blockHeader.getInt();
+				int storedLength = blockHeader.getInt();
+				if (rawLength == 0)
+					break;
+				if (rawLength < 0 || storedLength < 0 || (inflater == null && storedLength != rawLength))
+					throw new IOException("corrupt snapshot block");
+				if (storedLength > channel.size() - channel.position())
+					throw new IOException("snapshot is truncated");
+				if (stored.length < storedLength)
+					stored = new byte[storedLength];
+				readFully(channel, ByteBuffer.wrap(stored, 0, storedLength));
+				if (inflater != null)
+					raw = inflate(inflater, stored, storedLength, raw, rawLength);
+				else
+					raw = stored;
+				st.restoreBlock(raw, rawLength, count, keyCodec, valueCodec);
+			}
+		} finally {
+			if (inflater != null)
+				inflater.end();
+		}
+		if (st.numberOfPairs != count)
+			throw new IOException("snapshot holds " + st.numberOfPairs + " pairs, header says " + count);
+		return st;
+	}
+
+	// inflates a block of rawLength bytes into raw, growing it only as the
+	// output arrives, so a corrupt rawLength cannot force a huge allocation;
+	// returns the array holding the block
+	private static byte[] inflate(Inflater inflater, byte[] stored, int storedLength, byte[] raw, int rawLength)
+			throws IOException {
+		inflater.reset();
+		inflater.setInput(stored, 0, storedLength);
+		int n = 0;
+		try {
+			while (n < rawLength && !inflater.finished()) {
+				if (n == raw.length)
+					raw = Arrays.copyOf(raw, (int) Math.min(rawLength, Math.max(SNAPSHOT_BLOCK, 2L * raw.length)));
+				int k = inflater.inflate(raw, n, Math.min(raw.length, rawLength) - n);
+				if (k == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				n += k;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("corrupt snapshot block", e);
+		}
+		if (n != rawLength || !inflater.finished())
+			throw new IOException("corrupt snapshot block");
+		return raw;
+	}
+
+	// decodes the records of one block and places them in their slots,
+	// growing the table if it was presized below the header's count
+	private void restoreBlock(byte[] raw, int length, int count, Codec<? extends Key> keyCodec,
+			Codec<? extends Value> valueCodec) throws IOException {
+		ByteArrayInputStream bytes = new ByteArrayInputStream(raw, 0, length);
+		DataInputStream in = new DataInputStream(bytes);
+		while (bytes.available() > 0) {
+			Key key = decode(in, bytes, keyCodec);
+			Value val = decode(in, bytes, valueCodec);
+			if (key == null || val == null)
+				throw new IOException("codec decoded null");
+			if (numberOfPairs >= count)
+				throw new IOException("snapshot holds more pairs than its header says");
+			if (numberOfPairs >= sizeLPTable / 2) {
+				resize(2 * sizeLPTable);
+				finishRehash();
+			}
+			int h = key.hashCode();
+			int i;
+			for (i = hash(h); keys[i] != null; i = (i + 1) % sizeLPTable)
+				if (hashes[i] == h && keys[i].equals(key))
+					throw new IOException("duplicate key in snapshot: " + key);
+			keys[i] = key;
+			vals[i] = val;
+			hashes[i] = h;
+			numberOfPairs++;
+		}
+	}
+
+	// reads one length-prefixed record and checks the codec used all of it
+	private static <T> T decode(DataInputStream in, ByteArrayInputStream bytes, Codec<? extends T> codec)
+			throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > bytes.available())
+			throw new IOException("corrupt snapshot record");
+		int before = bytes.available();
+		T value = codec.decode(in, length);
+		if (before - bytes.available() != length)
+			throw new IOException("codec read " + (before - bytes.available()) + " of " + length + " bytes");
+		return value;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			if (channel.read(buffer) < 0)
+				throw new IOException("snapshot is truncated");
+	}
+
+	// growable byte buffer whose array can be written without a copy
+	private static final class SnapshotBuffer extends ByteArrayOutputStream {
+		SnapshotBuffer(int size) {
+			super(size);
+		}
+
+		byte[] array() {
+			return buf;
+		}
+	}
+
+	/**
+	 * Returns the probe lengths, longest cluster and resize counts of this
+	 * symbol table. Walks the whole table; keys still waiting in the old
+	 * table of an incremental rehash are counted with their probe length
+	 * there.
+	 */
+	public HashTableStats stats() {
+		HashTableStats.Builder b = new HashTableStats.Builder("LinearProbingHashST", HashTableStats.Kind.PROBE,
+				numberOfPairs, sizeLPTable);
+		for (int i = 0; i < sizeLPTable; i++)
+			if (keys[i] != null)
+				b.length(Math.floorMod(i - hash(hashes[i]), sizeLPTable) + 1);
+		if (rehashing())
+			for (int i = rehashIndex; i < oldSize; i++)
+				if (oldVals[i] != null)
+					b.length(Math.floorMod(i - (oldHashes[i] & 0x7fffffff) % oldSize, oldSize) + 1);
+
+		// runs of occupied slots, starting after an empty slot so that a run
+		// wrapping around the end is measured whole
+		int first = 0;
+		while (first < sizeLPTable && keys[first] != null)
+			first++;
+		if (first == sizeLPTable) {
+			b.cluster(sizeLPTable);
+		} else {
+			int run = 0;
+			for (int n = 1; n <= sizeLPTable; n++) {
+				if (keys[(first + n) % sizeLPTable] != null) {
+					run++;
+				} else {
+					b.cluster(run);
+					run = 0;
+				}
+			}
+		}
+		return b.resizes(resizes, resizeNanos).build();
+	}
+
 	// integrity check - don't check after each put() because
 	// integrity not maintained during a delete()
 	private boolean check() {
 
 		// check that hash table is at most 50% full
-		if (sizeLPTable < 2 * numberOfPairs) {
+		if (!rehashing() && sizeLPTable < 2 * numberOfPairs) {
 			System.err.println("Hash table size m = " + sizeLPTable + "; array size n = " + numberOfPairs);
 			return false;
 		}
@@ -186,8 +1054,8 @@ public class LinearProbingHashST<Key, Value> {
 		for (int i = 0; i < sizeLPTable; i++) {
 			if (keys[i] == null)
 				continue;
-			else if (get(keys[i]) != vals[i]) {
-				System.err.println("get[" + keys[i] + "] = " + get(keys[i]) + "; vals[i] = " + vals[i]);
+			else if (lookup(keys[i]) != vals[i]) {
+				System.err.println("get[" + keys[i] + "] = " + lookup(keys[i]) + "; vals[i] = " + vals[i]);
 				return false;
 			}
 		}
@@ -0,0 +1,211 @@
+package dataStructures;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal perfect hash function over a fixed set of n strings, built the
+ * BBHash way: index() maps each key of the set to a distinct number in
+ * [0, n) using about 4 bits per key and no stored keys.
+ *
+ * Level 0 is a bit array of gamma * n bits. Every key hashes to one bit;
+ * bits hit by exactly one key are set, and the keys that collided move on
+ * to level 1, which is sized for them alone, and so on. A key's index is
+ * the number of set bits before its bit across all levels, answered with a
+ * rank table sampled every 512 bits. The few keys still colliding after
+ * MAX_LEVELS levels are kept in a small map.
+ *
+ * index() of a key outside the set returns an arbitrary number in [0, n)
+ * or -1; callers that can be asked about unknown keys must check the key
+ * stored at that index, as StaticDictionary does.
+ */
+public class MinimalPerfectHash {
+	private static final int MAX_LEVELS = 32;
+	private static final double DEFAULT_GAMMA = 2.0;
+	private static final int LONGS_PER_RANK = 8; // one rank sample per 512 bits
+
+	private final long[] bits; // all levels, each starting on a long boundary
+	private final long[] levelStart; // first bit of each level, plus the end
+	private final int[] ranks; // set bits before each 512-bit block
+	private final int levels;
+	private final Map<String, Integer> fallback; // keys left after the last level
+	private final int size;
+
+	private MinimalPerfectHash(long[] bits, long[] levelStart, int levels, Map<String, Integer> fallback, int size) {
+		this.bits = bits;
+		this.levelStart = levelStart;
+		this.levels = levels;
+		this.fallback = fallback;
+		this.size = size;
+		ranks = new int[(bits.length + LONGS_PER_RANK - 1) / LONGS_PER_RANK + 1];
+		int count = 0;
+		for (int i = 0; i < bits.length; i++) {
+			if (i % LONGS_PER_RANK == 0)
+				ranks[i / LONGS_PER_RANK] = count;
+			count += Long.bitCount(bits[i]);
+		}
+	}
+
+	/**
+	 * Builds the function for a set of distinct keys with gamma 2.0.
+	 */
+	public static MinimalPerfectHash build(String[] keys) {
+		return build(keys, DEFAULT_GAMMA);
+	}
+
+	/**
+	 * Builds the function for a set of distinct keys.
+	 *
+	 * @param gamma
+	 *            bits per remaining key at each level; larger values use
+	 *            more space but fewer levels, so lookups are faster
+	 * @throws IllegalArgumentException
+	 *             if a key is null or repeated, or gamma is less than 1
+	 */
+	public static MinimalPerfectHash build(String[] keys, double gamma) {
+		if (!(gamma >= 1))
+			throw new IllegalArgumentException("gamma must be at least 1");
+		int n = keys.length;
+		long[] base = new long[n];
+		for (int i = 0; i < n; i++) {
+			if (keys[i] == null)
+				throw new IllegalArgumentException("key " + i + " is null");
+			base[i] = baseHash(keys[i]);
+		}
+
+		long[][] levelBits = new long[MAX_LEVELS][];
+		int[] remaining = new int[n]; // key numbers still unplaced
+		for (int i = 0; i < n; i++)
+			remaining[i] = i;
+		int left = n;
+		int levels = 0;
+		while (left > 0 && levels < MAX_LEVELS) {
+			long m = Math.max(64, (long) Math.ceil(left * gamma));
+			m = (m + 63) & ~63L;
+			long[] hit = new long[(int) (m >>> 6)];
+			long[] collided = new long[hit.length];
+			for (int j = 0; j < left; j++) {
+				long b = position(base[remaining[j]], levels, m);
+				if (get(hit, b))
+					set(collided, b);
+				else
+					set(hit, b);
+			}
+			for (int w = 0; w < hit.length; w++)
+				hit[w] &= ~collided[w];
+
+			int next = 0;
+			for (int j = 0; j < left; j++)
+				if (!get(hit, position(base[remaining[j]], levels, m)))
+					remaining[next++] = remaining[j];
+			levelBits[levels++] = hit;
+			left = next;
+		}
+
+		long[] levelStart = new long[levels + 1];
+		for (int l = 0; l < levels; l++)
+			levelStart[l + 1] = levelStart[l] + ((long) levelBits[l].length << 6);
+		if (levelStart[levels] >>> 6 > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("too many keys");
+		long[] bits = new long[(int) (levelStart[levels] >>> 6)];
+		for (int l = 0; l < levels; l++)
+			System.arraycopy(levelBits[l], 0, bits, (int) (levelStart[l] >>> 6), levelBits[l].length);
+
+		// the keys placed in the levels take [0, n - left), the rest follow
+		Map<String, Integer> fallback = new HashMap<String, Integer>();
+		for (int j = 0; j < left; j++)
+			if (fallback.put(keys[remaining[j]], n - left + j) != null)
+				throw new IllegalArgumentException("key " + keys[remaining[j]] + " is repeated");
+		return new MinimalPerfectHash(bits, levelStart, levels, fallback, n);
+	}
+
+	// 64 bits from two independent 32-bit string hashes
+	private static long baseHash(CharSequence key) {
+		return (long) StringHashStrategy.MURMUR3.hash(key) << 32 | (StringHashStrategy.XXHASH.hash(key) & 0xFFFFFFFFL);
+	}
+
+	// bit of a key within a level of m bits
+	private static long position(long base, int level, long m) {
+		long h = base + (level + 1) * 0x9E3779B97F4A7C15L;
+		h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+		h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return Long.remainderUnsigned(h, m);
+	}
+
+	private static boolean get(long[] words, long bit) {
+		return (words[(int) (bit >>> 6)] & (1L << bit)) != 0;
+	}
+
+	private static void set(long[] words, long bit) {
+		words[(int) (bit >>> 6)] |= 1L << bit;
+	}
+
+	/**
+	 * Returns the number of keys in the set.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the index of a key of the set, a number in [0, size()). For
+	 * any other key returns an arbitrary index or -1.
+	 */
+	public int index(CharSequence key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to index() is null");
+		long base = baseHash(key);
+		for (int l = 0; l < levels; l++) {
+			long m = levelStart[l + 1] - levelStart[l];
+			long bit = levelStart[l] + position(base, l, m);
+			if (get(bits, bit))
+				return rank(bit);
+		}
+		Integer i = fallback.isEmpty() ? null : fallback.get(key.toString());
+		return i == null ? -1 : i;
+	}
+
+	// number of set bits before the given bit
+	private int rank(long bit) {
+		int word = (int) (bit >>> 6);
+		int block = word / LONGS_PER_RANK;
+		int count = ranks[block];
+		for (int w = block * LONGS_PER_RANK; w < word; w++)
+			count += Long.bitCount(bits[w]);
+		return count + Long.bitCount(bits[word] & ((1L << bit) - 1));
+	}
+
+	/**
+	 * Returns the bits of metadata per key: level bits plus rank samples,
+	 * not counting the fallback map.
+	 */
+	public double bitsPerKey() {
+		return size == 0 ? 0 : (64.0 * bits.length + 32.0 * ranks.length) / size;
+	}
+
+	public int levels() {
+		return levels;
+	}
+
+	@Override
+	public String toString() {
+		return "MinimalPerfectHash(" + size + " keys, " + levels + " levels, "
+				+ String.format("%.2f", bitsPerKey()) + " bits/key, fallback " + fallback.size() + ")";
+	}
+
+	// checks that the keys map into [0, n) without collisions, and so onto it
+	boolean check(String[] keys) {
+		if (keys.length != size)
+			return false;
+		boolean[] seen = new boolean[size];
+		for (String key : keys) {
+			int i = index(key);
+			if (i < 0 || i >= size || seen[i])
+				return false;
+			seen[i] = true;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,330 @@
+package dataStructures;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Word/definition dictionary that keeps its entries off the Java heap.
+ *
+ * Keys and definitions are appended as UTF-8 bytes to an arena of direct
+ * ByteBuffer chunks, one record per entry:
+ *
+ * int keyLength, int definitionLength, key bytes, definition bytes
+ *
+ * The index is open addressing with linear probing over two primitive
+ * arrays: the arena address of each record and the FNV-1a hash of its key.
+ * Probes compare the hash before touching the arena. No object is allocated
+ * per entry, so the garbage collector sees a handful of arrays however many
+ * words are loaded, and the data is bounded by -XX:MaxDirectMemorySize
+ * rather than by -Xmx.
+ *
+ * The first chunk is sized from the expected number of entries and each
+ * further chunk doubles the last, up to the maximum chunk size. A new
+ * definition that fits in the old record overwrites it; otherwise a new
+ * record is appended and the old one is dead. wastedBytes() reports the dead
+ * bytes, and once they make up half of the arena the live records are copied
+ * into fresh chunks.
+ */
+public class OffHeapDictionary {
+	private static final int INIT_CAPACITY = 16;
+	private static final int DEFAULT_CHUNK_SIZE = 64 << 20; // 64 MB
+	private static final int MIN_CHUNK_SIZE = 4 << 10; // 4 KB
+	private static final int EXPECTED_RECORD_BYTES = 64; // for sizing the first chunk
+	private static final int HEADER_BYTES = 8; // key and definition lengths
+	private static final long EMPTY = -1L;
+
+	private static final int FNV_OFFSET_BASIS = 0x811C9DC5;
+	private static final int FNV_PRIME = 0x01000193;
+
+	private final int chunkSize; // largest arena chunk, bar oversized records
+	private final int firstChunkSize; // bytes of the first arena chunk
+	private List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+	private ByteBuffer current; // chunk records are appended to
+	private long arenaBytes; // bytes of records, live or dead
+
+	private long[] addresses; // chunk index << 32 | offset, EMPTY if free
+	private int[] hashes; // FNV-1a hash of each key
+	private int mask; // capacity - 1
+	private int size; // number of entries
+	private long wastedBytes; // bytes of dead records and unused record tails
+
+	public OffHeapDictionary() {
+		this(INIT_CAPACITY, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Initializes an empty dictionary.
+	 *
+	 * @param expectedSize
+	 *            number of entries the index holds without resizing
+	 * @param chunkSize
+	 *            most bytes allocated per arena chunk; larger records get a
+	 *            chunk of their own
+	 * @throws IllegalArgumentException
+	 *             if expectedSize is negative or chunkSize is not positive
+	 */
+	public OffHeapDictionary(int expectedSize, int chunkSize) {
+		if (expectedSize < 0)
+			throw new IllegalArgumentException("expected size must be non-negative");
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("chunk size must be positive");
+		this.chunkSize = chunkSize;
+		long bytes = Math.max(MIN_CHUNK_SIZE, (long) expectedSize * EXPECTED_RECORD_BYTES);
+		firstChunkSize = (int) Math.min(chunkSize, bytes);
+		int capacity = INIT_CAPACITY;
+		while (capacity / 2 < expectedSize && capacity < 1 << 30)
+			capacity <<= 1;
+		allocateIndex(capacity);
+	}
+
+	private void allocateIndex(int capacity) {
+		addresses = new long[capacity];
+		Arrays.fill(addresses, EMPTY);
+		hashes = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	// 32-bit FNV-1a over a byte range
+	static int fnv1a(byte[] bytes, int offset, int length) {
+		int h = FNV_OFFSET_BASIS;
+		for (int i = offset; i < offset + length; i++) {
+			h ^= bytes[i] & 0xFF;
+			h *= FNV_PRIME;
+		}
+		return h;
+	}
+
+	// first slot of a hash; FNV-1a mixes its high bits better than its low
+	private int home(int h) {
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the number of direct bytes allocated for the arena.
+	 */
+	public long offHeapBytes() {
+		long total = 0;
+		for (ByteBuffer chunk : chunks)
+			total += chunk.capacity();
+		return total;
+	}
+
+	/**
+	 * Returns the number of arena bytes holding records, including dead ones
+	 * not yet compacted away.
+	 */
+	public long arenaBytes() {
+		return arenaBytes;
+	}
+
+	/**
+	 * Returns the number of arena bytes held by replaced records and by the
+	 * unused tails of records overwritten with shorter definitions.
+	 */
+	public long wastedBytes() {
+		return wastedBytes;
+	}
+
+	/**
+	 * Adds the word with its definition, replacing the definition if the word
+	 * is already present.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if word or definition is null
+	 */
+	public void insert(String word, String definition) {
+		if (word == null || definition == null)
+			throw new IllegalArgumentException("word and definition must not be null");
+		byte[] key = word.getBytes(StandardCharsets.UTF_8);
+		byte[] def = definition.getBytes(StandardCharsets.UTF_8);
+		int h = fnv1a(key, 0, key.length);
+
+		int i = indexOf(key, h);
+		if (i >= 0) {
+			replace(i, key, def);
+			return;
+		}
+
+		if (size + 1 > (mask + 1) / 2)
+			resize(2 * (mask + 1));
+		for (i = home(h); addresses[i] != EMPTY; i = (i + 1) & mask)
+			;
+		addresses[i] = append(key, def);
+		hashes[i] = h;
+		size++;
+	}
+
+	public void addTheArray(String[][] elementsToAdd) {
+		for (int i = 0; i < elementsToAdd.length; i++)
+			insert(elementsToAdd[i][0], elementsToAdd[i][1]);
+	}
+
+	/**
+	 * Returns the definition of the word, or null if it is not in the
+	 * dictionary.
+	 */
+	public String find(String wordToFind) {
+		if (wordToFind == null)
+			throw new IllegalArgumentException("argument to find() is null");
+		byte[] key = wordToFind.getBytes(StandardCharsets.UTF_8);
+		int i = indexOf(key, fnv1a(key, 0, key.length));
+		if (i < 0)
+			return null;
+		long address = addresses[i];
+		ByteBuffer chunk = chunks.get(chunkOf(address));
+		int offset = offsetOf(address);
+		byte[] def = new byte[chunk.getInt(offset + 4)];
+		chunk.get(offset + HEADER_BYTES + key.length, def);
+		return new String(def, StandardCharsets.UTF_8);
+	}
+
+	public boolean contains(String word) {
+		if (word == null)
+			throw new IllegalArgumentException("argument to contains() is null");
+		byte[] key = word.getBytes(StandardCharsets.UTF_8);
+		return indexOf(key, fnv1a(key, 0, key.length)) >= 0;
+	}
+
+	// slot of the key with hash h, or -1
+	private int indexOf(byte[] key, int h) {
+		for (int i = home(h); addresses[i] != EMPTY; i = (i + 1) & mask)
+			if (hashes[i] == h && keyEquals(addresses[i], key))
+				return i;
+		return -1;
+	}
+
+	private boolean keyEquals(long address, byte[] key) {
+		ByteBuffer chunk = chunks.get(chunkOf(address));
+		int offset = offsetOf(address);
+		if (chunk.getInt(offset) != key.length)
+			return false;
+		offset += HEADER_BYTES;
+		for (int j = 0; j < key.length; j++)
+			if (chunk.get(offset + j) != key[j])
+				return false;
+		return true;
+	}
+
+	private int recordLength(long address) {
+		ByteBuffer chunk = chunks.get(chunkOf(address));
+		int offset = offsetOf(address);
+		return HEADER_BYTES + chunk.getInt(offset) + chunk.getInt(offset + 4);
+	}
+
+	private static int chunkOf(long address) {
+		return (int) (address >>> 32);
+	}
+
+	private static int offsetOf(long address) {
+		return (int) address;
+	}
+
+	// stores a new definition for the entry in slot i, in place if it fits
+	private void replace(int i, byte[] key, byte[] def) {
+		long address = addresses[i];
+		ByteBuffer chunk = chunks.get(chunkOf(address));
+		int offset = offsetOf(address);
+		int oldLength = chunk.getInt(offset + 4);
+		if (def.length <= oldLength) {
+			chunk.putInt(offset + 4, def.length);
+			chunk.put(offset + HEADER_BYTES + key.length, def);
+			wastedBytes += oldLength - def.length;
+		} else {
+			wastedBytes += recordLength(address);
+			addresses[i] = append(key, def);
+		}
+		if (wastedBytes > MIN_CHUNK_SIZE && wastedBytes > arenaBytes / 2)
+			compact();
+	}
+
+	// writes a record to the arena and returns its address
+	private long append(byte[] key, byte[] def) {
+		int length = HEADER_BYTES + key.length + def.length;
+		if (length < 0)
+			throw new IllegalArgumentException("entry too large");
+		long address = reserve(length);
+		current.putInt(key.length).putInt(def.length).put(key).put(def);
+		return address;
+	}
+
+	// makes room for length bytes in the current chunk, starting a chunk
+	// twice the size of the last one if it is full, and returns their address
+	private long reserve(int length) {
+		if (current == null || current.remaining() < length) {
+			int size = current == null ? firstChunkSize : (int) Math.min(chunkSize, 2L * current.capacity());
+			current = ByteBuffer.allocateDirect(Math.max(size, length));
+			chunks.add(current);
+		}
+		arenaBytes += length;
+		return (long) (chunks.size() - 1) << 32 | current.position();
+	}
+
+	// copies the live records into fresh chunks, dropping the dead bytes;
+	// the old chunks are freed once the collector finds them unreachable
+	private void compact() {
+		List<ByteBuffer> old = chunks;
+		long live = arenaBytes - wastedBytes;
+		chunks = new ArrayList<ByteBuffer>();
+		current = ByteBuffer.allocateDirect((int) Math.min(chunkSize, Math.max(MIN_CHUNK_SIZE, live)));
+		chunks.add(current);
+		arenaBytes = 0;
+		wastedBytes = 0;
+		for (int i = 0; i <= mask; i++) {
+			if (addresses[i] == EMPTY)
+				continue;
+			ByteBuffer chunk = old.get(chunkOf(addresses[i]));
+			int offset = offsetOf(addresses[i]);
+			int length = HEADER_BYTES + chunk.getInt(offset) + chunk.getInt(offset + 4);
+			addresses[i] = reserve(length);
+			current.put(chunk.slice(offset, length));
+		}
+	}
+
+	// rebuilds the index from the stored hashes; the arena is not touched
+	private void resize(int capacity) {
+		long[] oldAddresses = addresses;
+		int[] oldHashes = hashes;
+		allocateIndex(capacity);
+		for (int j = 0; j < oldAddresses.length; j++) {
+			if (oldAddresses[j] == EMPTY)
+				continue;
+			int i;
+			for (i = home(oldHashes[j]); addresses[i] != EMPTY; i = (i + 1) & mask)
+				;
+			addresses[i] = oldAddresses[j];
+			hashes[i] = oldHashes[j];
+		}
+	}
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+		OffHeapDictionary dictionary = new OffHeapDictionary();
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			dictionary.insert("word" + i, "definition of word number " + i);
+		System.out.printf("loaded %d words in %d ms, %d MB off heap, %d MB of records%n", dictionary.size(),
+				(System.nanoTime() - start) / 1000000, dictionary.offHeapBytes() >> 20, dictionary.arenaBytes() >> 20);
+
+		Scanner input = new Scanner(System.in);
+		String wordLookUp = "a";
+		while (!wordLookUp.equalsIgnoreCase("x") && input.hasNextLine()) {
+			System.out.println("\nEnter a word such as word42 (x to quit) : ");
+			wordLookUp = input.nextLine();
+			System.out.println(dictionary.find(wordLookUp));
+		}
+	}
+
+}
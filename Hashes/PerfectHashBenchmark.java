@@ -0,0 +1,91 @@
+package dataStructures;
+
+import java.util.Random;
+
+/**
+ * Compares StaticDictionary with HashFunction's separate chaining on the
+ * same static word list: heap taken by each structure beyond the shared
+ * word and definition strings, and the time of a successful and an
+ * unsuccessful find().
+ *
+ * Heap use is measured as the change in used memory around building each
+ * structure, so run it with a fixed heap (e.g. -Xms2g -Xmx2g) for stable
+ * numbers.
+ *
+ * Usage: java dataStructures.PerfectHashBenchmark [number of words]
+ */
+public class PerfectHashBenchmark {
+
+	// keeps the lookup loops from being optimized away
+	static volatile int sink;
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static String[][] words(int n, Random random) {
+		String[][] elements = new String[n][];
+		for (int i = 0; i < n; i++) {
+			String word = Integer.toString(i, 26).replace('0', 'z') + (char) ('a' + random.nextInt(26));
+			elements[i] = new String[] { word, "definition of " + word };
+		}
+		return elements;
+	}
+
+	// time per HashFunction.find(), in ns
+	private static double time(HashFunction table, String[] queries) {
+		long start = System.nanoTime();
+		int found = 0;
+		for (String query : queries)
+			if (table.find(query) != null)
+				found++;
+		sink += found;
+		return (System.nanoTime() - start) / (double) queries.length;
+	}
+
+	// time per StaticDictionary.find(), in ns
+	private static double time(StaticDictionary dictionary, String[] queries) {
+		long start = System.nanoTime();
+		int found = 0;
+		for (String query : queries)
+			if (dictionary.find(query) != null)
+				found++;
+		sink += found;
+		return (System.nanoTime() - start) / (double) queries.length;
+	}
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+		Random random = new Random(7);
+		String[][] elements = words(n, random);
+		String[] hits = new String[n];
+		String[] misses = new String[n];
+		for (int i = 0; i < n; i++) {
+			hits[i] = elements[random.nextInt(n)][0];
+			misses[i] = elements[random.nextInt(n)][0] + "?";
+		}
+
+		long before = usedHeap();
+		HashFunction chaining = new HashFunction(n);
+		chaining.addTheArray(elements);
+		long chainingBytes = usedHeap() - before;
+
+		before = usedHeap();
+		long start = System.nanoTime();
+		StaticDictionary dictionary = StaticDictionary.build(elements);
+		long buildMillis = (System.nanoTime() - start) / 1000000;
+		long dictionaryBytes = usedHeap() - before;
+
+		System.out.printf("%d words; %s built in %d ms%n", n, dictionary, buildMillis);
+		for (int round = 0; round < 3; round++) {
+			System.out.printf("%-20s %8.1f bytes/word %8.1f ns/hit %8.1f ns/miss%n", "HashFunction",
+					chainingBytes / (double) n, time(chaining, hits), time(chaining, misses));
+			System.out.printf("%-20s %8.1f bytes/word %8.1f ns/hit %8.1f ns/miss%n", "StaticDictionary",
+					dictionaryBytes / (double) n, time(dictionary, hits), time(dictionary, misses));
+		}
+	}
+
+}
@@ -0,0 +1,638 @@
+package hashes;
+
+import java.util.function.BiConsumer;
+
+import queue.Queue;
+
+/**
+ * Persistent symbol table: a compressed hash array mapped trie (CHAMP).
+ *
+ * Each trie node covers five bits of the spread hash and holds two bitmaps:
+ * one for the hash fragments stored inline as key-value pairs, one for the
+ * fragments that lead to a sub-node. The pairs come first in the node's
+ * array and the sub-nodes follow in reverse order, so both are found with a
+ * bit count and no empty slots are stored. Keys whose hashes agree on all 32
+ * bits share a collision node at the bottom.
+ *
+ * Nodes are never changed once another version can see them. put() and
+ * delete() copy the path from the root to the changed entry and share the
+ * rest of the trie, so snapshot() is O(1): it just captures the current root.
+ * A Snapshot is immutable and safely published through its final fields, so
+ * readers on other threads may look up and iterate it without locks while
+ * the writer carries on. The table itself is for a single writer.
+ *
+ * Between beginBatch() and endBatch() the table is transient: nodes created
+ * during the batch belong to it and are updated in place, so a bulk load
+ * copies each path at most once instead of on every put. snapshot() ends the
+ * ownership of the nodes made so far, so a snapshot taken in the middle of a
+ * batch is not disturbed by the rest of it.
+ */
+public class PersistentHashST<Key, Value> {
+	private static final int BITS = 5; // hash bits per level
+	private static final int MASK = (1 << BITS) - 1;
+
+	private static final Object[] NO_CONTENT = {};
+	private static final int[] NO_HASHES = {};
+
+	private static final BitmapNode EMPTY = new BitmapNode(null, 0, 0, NO_CONTENT, NO_HASHES);
+
+	private Node root = EMPTY;
+	private int size; // number of key-value pairs
+	private Object edit; // owner of the nodes that may change in place, null outside a batch
+	private boolean changed; // set by the node operations when the size changes
+
+	/**
+	 * A trie node; content holds key-value pairs, followed in a BitmapNode by
+	 * the sub-nodes in reverse order.
+	 */
+	private abstract static class Node {
+		final Object edit; // batch that owns this node, or null
+		Object[] content;
+
+		Node(Object edit, Object[] content) {
+			this.edit = edit;
+			this.content = content;
+		}
+
+		abstract int payloadArity();
+
+		abstract int nodeArity();
+
+		final Object key(int i) {
+			return content[2 * i];
+		}
+
+		final Object value(int i) {
+			return content[2 * i + 1];
+		}
+
+		abstract int hash(int i);
+
+		abstract Node node(int i);
+
+		// may the batch holding edit change this node in place?
+		final boolean ownedBy(Object edit) {
+			return edit != null && this.edit == edit;
+		}
+	}
+
+	private static final class BitmapNode extends Node {
+		int dataMap; // fragments stored inline
+		int nodeMap; // fragments leading to a sub-node
+		int[] hashes; // spread hash of each inline key
+
+		BitmapNode(Object edit, int dataMap, int nodeMap, Object[] content, int[] hashes) {
+			super(edit, content);
+			this.dataMap = dataMap;
+			this.nodeMap = nodeMap;
+			this.hashes = hashes;
+		}
+
+		int payloadArity() {
+			return Integer.bitCount(dataMap);
+		}
+
+		int nodeArity() {
+			return Integer.bitCount(nodeMap);
+		}
+
+		int hash(int i) {
+			return hashes[i];
+		}
+
+		Node node(int i) {
+			return (Node) content[content.length - 1 - i];
+		}
+
+		int dataIndex(int bit) {
+			return Integer.bitCount(dataMap & (bit - 1));
+		}
+
+		int nodeIndex(int bit) {
+			return Integer.bitCount(nodeMap & (bit - 1));
+		}
+
+		Node put(Object edit, Object key, Object val, int h, int shift, PersistentHashST<?, ?> st) {
+			int bit = 1 << fragment(h, shift);
+			if ((dataMap & bit) != 0) {
+				int i = dataIndex(bit);
+				Object k = content[2 * i];
+				if (hashes[i] == h && k.equals(key)) {
+					if (content[2 * i + 1] == val)
+						return this;
+					BitmapNode n = editable(edit);
+					n.content[2 * i + 1] = val;
+					return n;
+				}
+				Node sub = merge(edit, k, content[2 * i + 1], hashes[i], key, val, h, shift + BITS);
+				st.changed = true;
+				return inlineToNode(edit, bit, i, sub);
+			}
+			if ((nodeMap & bit) != 0) {
+				int j = content.length - 1 - nodeIndex(bit);
+				Node sub = (Node) content[j];
+				Node newSub = sub instanceof BitmapNode ? ((BitmapNode) sub).put(edit, key, val, h, shift + BITS, st)
+						: ((CollisionNode) sub).put(edit, key, val, st);
+				if (newSub == sub)
+					return this;
+				BitmapNode n = editable(edit);
+				n.content[j] = newSub;
+				return n;
+			}
+			st.changed = true;
+			return insert(edit, bit, key, val, h);
+		}
+
+		Node delete(Object edit, Object key, int h, int shift, PersistentHashST<?, ?> st) {
+			int bit = 1 << fragment(h, shift);
+			if ((dataMap & bit) != 0) {
+				int i = dataIndex(bit);
+				if (hashes[i] != h || !content[2 * i].equals(key))
+					return this;
+				st.changed = true;
+				if (shift > 0 && payloadArity() == 2 && nodeArity() == 0) {
+					// the survivor will be inlined by the parent; give it the
+					// bitmap of a root in case it becomes one
+					int other = 1 - i;
+					int oh = hashes[other];
+					return new BitmapNode(edit, 1 << fragment(oh, 0), 0,
+							new Object[] { content[2 * other], content[2 * other + 1] }, new int[] { oh });
+				}
+				return remove(edit, bit, i);
+			}
+			if ((nodeMap & bit) != 0) {
+				int j = content.length - 1 - nodeIndex(bit);
+				Node sub = (Node) content[j];
+				Node newSub = sub instanceof BitmapNode ? ((BitmapNode) sub).delete(edit, key, h, shift + BITS, st)
+						: ((CollisionNode) sub).delete(edit, key, h, st);
+				if (newSub == sub)
+					return this;
+				if (newSub.payloadArity() == 1 && newSub.nodeArity() == 0) {
+					// a single pair moves up a level, or further if this node
+					// would be left holding nothing else
+					if (shift > 0 && payloadArity() == 0 && nodeArity() == 1)
+						return newSub;
+					return nodeToInline(edit, bit, newSub);
+				}
+				BitmapNode n = editable(edit);
+				n.content[j] = newSub;
+				return n;
+			}
+			return this;
+		}
+
+		// this node, or a copy of it owned by edit
+		private BitmapNode editable(Object edit) {
+			if (ownedBy(edit))
+				return this;
+			return new BitmapNode(edit, dataMap, nodeMap, content.clone(), hashes.clone());
+		}
+
+		private Node insert(Object edit, int bit, Object key, Object val, int h) {
+			int i = dataIndex(bit);
+			Object[] c = new Object[content.length + 2];
+			System.arraycopy(content, 0, c, 0, 2 * i);
+			c[2 * i] = key;
+			c[2 * i + 1] = val;
+			System.arraycopy(content, 2 * i, c, 2 * i + 2, content.length - 2 * i);
+			int[] hs = new int[hashes.length + 1];
+			System.arraycopy(hashes, 0, hs, 0, i);
+			hs[i] = h;
+			System.arraycopy(hashes, i, hs, i + 1, hashes.length - i);
+			return update(edit, dataMap | bit, nodeMap, c, hs);
+		}
+
+		private Node remove(Object edit, int bit, int i) {
+			Object[] c = new Object[content.length - 2];
+			System.arraycopy(content, 0, c, 0, 2 * i);
+			System.arraycopy(content, 2 * i + 2, c, 2 * i, content.length - 2 * i - 2);
+			int[] hs = new int[hashes.length - 1];
+			System.arraycopy(hashes, 0, hs, 0, i);
+			System.arraycopy(hashes, i + 1, hs, i, hashes.length - i - 1);
+			return update(edit, dataMap ^ bit, nodeMap, c, hs);
+		}
+
+		// replaces the pair i at the fragment bit with a sub-node
+		private Node inlineToNode(Object edit, int bit, int i, Node sub) {
+			int from = 2 * i;
+			int to = content.length - 2 - nodeIndex(bit); // after the pair is gone
+			Object[] c = new Object[content.length - 1];
+			System.arraycopy(content, 0, c, 0, from);
+			System.arraycopy(content, from + 2, c, from, to - from);
+			c[to] = sub;
+			System.arraycopy(content, to + 2, c, to + 1, content.length - to - 2);
+			int[] hs = new int[hashes.length - 1];
+			System.arraycopy(hashes, 0, hs, 0, i);
+			System.arraycopy(hashes, i + 1, hs, i, hashes.length - i - 1);
+			return update(edit, dataMap ^ bit, nodeMap | bit, c, hs);
+		}
+
+		// replaces the sub-node at the fragment bit with its single pair
+		private Node nodeToInline(Object edit, int bit, Node sub) {
+			int from = content.length - 1 - nodeIndex(bit);
+			int to = 2 * dataIndex(bit);
+			Object[] c = new Object[content.length + 1];
+			System.arraycopy(content, 0, c, 0, to);
+			c[to] = sub.key(0);
+			c[to + 1] = sub.value(0);
+			System.arraycopy(content, to, c, to + 2, from - to);
+			System.arraycopy(content, from + 1, c, from + 2, content.length - from - 1);
+			int i = to / 2;
+			int[] hs = new int[hashes.length + 1];
+			System.arraycopy(hashes, 0, hs, 0, i);
+			hs[i] = sub.hash(0);
+			System.arraycopy(hashes, i, hs, i + 1, hashes.length - i);
+			return update(edit, dataMap | bit, nodeMap ^ bit, c, hs);
+		}
+
+		private Node update(Object edit, int dataMap, int nodeMap, Object[] content, int[] hashes) {
+			if (!ownedBy(edit))
+				return new BitmapNode(edit, dataMap, nodeMap, content, hashes);
+			this.dataMap = dataMap;
+			this.nodeMap = nodeMap;
+			this.content = content;
+			this.hashes = hashes;
+			return this;
+		}
+	}
+
+	// keys whose spread hashes are all equal
+	private static final class CollisionNode extends Node {
+		final int hash;
+
+		CollisionNode(Object edit, int hash, Object[] content) {
+			super(edit, content);
+			this.hash = hash;
+		}
+
+		int payloadArity() {
+			return content.length / 2;
+		}
+
+		int nodeArity() {
+			return 0;
+		}
+
+		int hash(int i) {
+			return hash;
+		}
+
+		Node node(int i) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		Node put(Object edit, Object key, Object val, PersistentHashST<?, ?> st) {
+			for (int i = 0; i < content.length; i += 2) {
+				if (content[i].equals(key)) {
+					if (content[i + 1] == val)
+						return this;
+					CollisionNode n = ownedBy(edit) ? this : new CollisionNode(edit, hash, content.clone());
+					n.content[i + 1] = val;
+					return n;
+				}
+			}
+			Object[] c = new Object[content.length + 2];
+			System.arraycopy(content, 0, c, 0, content.length);
+			c[content.length] = key;
+			c[content.length + 1] = val;
+			st.changed = true;
+			if (!ownedBy(edit))
+				return new CollisionNode(edit, hash, c);
+			content = c;
+			return this;
+		}
+
+		Node delete(Object edit, Object key, int h, PersistentHashST<?, ?> st) {
+			if (h != hash)
+				return this;
+			for (int i = 0; i < content.length; i += 2) {
+				if (content[i].equals(key)) {
+					st.changed = true;
+					if (content.length == 4) {
+						int other = 2 - i;
+						return new BitmapNode(edit, 1 << fragment(hash, 0), 0,
+								new Object[] { content[other], content[other + 1] }, new int[] { hash });
+					}
+					Object[] c = new Object[content.length - 2];
+					System.arraycopy(content, 0, c, 0, i);
+					System.arraycopy(content, i + 2, c, i, content.length - i - 2);
+					if (!ownedBy(edit))
+						return new CollisionNode(edit, hash, c);
+					content = c;
+					return this;
+				}
+			}
+			return this;
+		}
+	}
+
+	// spread hash code of the key
+	private static int hash(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int fragment(int h, int shift) {
+		return (h >>> shift) & MASK;
+	}
+
+	// the smallest trie holding two pairs with different keys, from the
+	// level at shift down
+	private static Node merge(Object edit, Object k1, Object v1, int h1, Object k2, Object v2, int h2, int shift) {
+		if (shift >= 32)
+			return new CollisionNode(edit, h1, new Object[] { k1, v1, k2, v2 });
+		int f1 = fragment(h1, shift);
+		int f2 = fragment(h2, shift);
+		if (f1 == f2) {
+			Node sub = merge(edit, k1, v1, h1, k2, v2, h2, shift + BITS);
+			return new BitmapNode(edit, 0, 1 << f1, new Object[] { sub }, NO_HASHES);
+		}
+		if (f1 < f2)
+			return new BitmapNode(edit, 1 << f1 | 1 << f2, 0, new Object[] { k1, v1, k2, v2 }, new int[] { h1, h2 });
+		return new BitmapNode(edit, 1 << f1 | 1 << f2, 0, new Object[] { k2, v2, k1, v1 }, new int[] { h2, h1 });
+	}
+
+	private static Object find(Node node, Object key) {
+		int h = hash(key);
+		for (int shift = 0;; shift += BITS) {
+			if (node instanceof CollisionNode) {
+				if (((CollisionNode) node).hash != h)
+					return null;
+				Object[] c = node.content;
+				for (int i = 0; i < c.length; i += 2)
+					if (c[i].equals(key))
+						return c[i + 1];
+				return null;
+			}
+			BitmapNode n = (BitmapNode) node;
+			int bit = 1 << fragment(h, shift);
+			if ((n.dataMap & bit) != 0) {
+				int i = n.dataIndex(bit);
+				return n.hashes[i] == h && n.content[2 * i].equals(key) ? n.content[2 * i + 1] : null;
+			}
+			if ((n.nodeMap & bit) == 0)
+				return null;
+			node = n.node(n.nodeIndex(bit));
+		}
+	}
+
+	private static void forEach(Node node, BiConsumer<Object, Object> action) {
+		for (int i = 0; i < node.payloadArity(); i++)
+			action.accept(node.key(i), node.value(i));
+		for (int i = 0; i < node.nodeArity(); i++)
+			forEach(node.node(i), action);
+	}
+
+	/**
+	 * Returns the number of key-value pairs
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns true if this symbol table contains the specified key.
+	 */
+	public boolean contains(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to contains() is null");
+		return find(root, key) != null;
+	}
+
+	/**
+	 * Returns the value associated with the specified key.
+	 */
+	@SuppressWarnings("unchecked")
+	public Value get(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to get() is null");
+		return (Value) find(root, key);
+	}
+
+	/**
+	 * Inserts the specified key-value pair, copying the path to it unless a
+	 * batch owns the nodes. Deletes the key if the value is null.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if key is null
+	 */
+	public void put(Key key, Value val) {
+		if (key == null)
+			throw new IllegalArgumentException("first argument to put() is null");
+		if (val == null) {
+			delete(key);
+			return;
+		}
+		changed = false;
+		root = ((BitmapNode) root).put(edit, key, val, hash(key), 0, this);
+		if (changed)
+			size++;
+	}
+
+	/**
+	 * Removes the specified key and its associated value from this symbol table
+	 * (if the key is in this symbol table).
+	 */
+	public void delete(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to delete() is null");
+		changed = false;
+		root = ((BitmapNode) root).delete(edit, key, hash(key), 0, this);
+		if (changed)
+			size--;
+	}
+
+	/**
+	 * Starts a batch: until endBatch(), nodes created by updates are changed
+	 * in place by later updates instead of being copied.
+	 *
+	 * @throws IllegalStateException
+	 *             if a batch is already running
+	 */
+	public void beginBatch() {
+		if (edit != null)
+			throw new IllegalStateException("batch already running");
+		edit = new Object();
+	}
+
+	/**
+	 * Ends the batch; from now on every update copies its path again.
+	 *
+	 * @throws IllegalStateException
+	 *             if no batch is running
+	 */
+	public void endBatch() {
+		if (edit == null)
+			throw new IllegalStateException("no batch running");
+		edit = null;
+	}
+
+	public boolean inBatch() {
+		return edit != null;
+	}
+
+	/**
+	 * Returns an immutable view of the current contents in O(1). Later
+	 * updates, in a batch or not, do not show through it.
+	 */
+	public Snapshot<Key, Value> snapshot() {
+		if (edit != null)
+			edit = new Object(); // the nodes made so far are shared from now on
+		return new Snapshot<Key, Value>(root, size);
+	}
+
+	/**
+	 * Returns all keys in this symbol table as an Iterable.
+	 */
+	public Iterable<Key> keys() {
+		return snapshot().keys();
+	}
+
+	/**
+	 * Passes every key and its value to the action. The walk covers the
+	 * contents at the time of the call; updates made by the action do not
+	 * disturb it.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if action is null
+	 */
+	public void forEach(BiConsumer<? super Key, ? super Value> action) {
+		snapshot().forEach(action);
+	}
+
+	/**
+	 * An immutable version of a PersistentHashST. All methods are safe to call
+	 * from any number of threads without locking.
+	 */
+	public static final class Snapshot<Key, Value> {
+		private final Node root;
+		private final int size;
+
+		private Snapshot(Node root, int size) {
+			this.root = root;
+			this.size = size;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		public boolean contains(Key key) {
+			if (key == null)
+				throw new IllegalArgumentException("argument to contains() is null");
+			return find(root, key) != null;
+		}
+
+		@SuppressWarnings("unchecked")
+		public Value get(Key key) {
+			if (key == null)
+				throw new IllegalArgumentException("argument to get() is null");
+			return (Value) find(root, key);
+		}
+
+		/**
+		 * Returns all keys of the snapshot as an Iterable.
+		 */
+		@SuppressWarnings("unchecked")
+		public Iterable<Key> keys() {
+			Queue<Key> queue = new Queue<Key>();
+			PersistentHashST.forEach(root, (k, v) -> queue.enqueue((Key) k));
+			return queue;
+		}
+
+		/**
+		 * Passes every key and its value to the action, without allocating.
+		 *
+		 * @throws IllegalArgumentException
+		 *             if action is null
+		 */
+		@SuppressWarnings("unchecked")
+		public void forEach(BiConsumer<? super Key, ? super Value> action) {
+			if (action == null)
+				throw new IllegalArgumentException("argument to forEach() is null");
+			PersistentHashST.forEach(root, (BiConsumer<Object, Object>) action);
+		}
+
+		/**
+		 * Returns a cursor over the snapshot; reset() makes it reusable. The
+		 * snapshot never changes, so the cursor never fails.
+		 */
+		public EntryCursor<Key, Value> cursor() {
+			return new Cursor<Key, Value>(root);
+		}
+	}
+
+	// depth-first walk of a trie with an explicit stack: the pairs of each
+	// node, then its sub-nodes
+	private static final class Cursor<Key, Value> implements EntryCursor<Key, Value> {
+		private static final int MAX_DEPTH = 32 / BITS + 2; // bitmap levels and a collision node
+
+		private final Node root;
+		private final Node[] stack = new Node[MAX_DEPTH];
+		private final int[] pairs = new int[MAX_DEPTH]; // current pair of each level
+		private final int[] subs = new int[MAX_DEPTH]; // next sub-node of each level
+		private int depth;
+		private Node node; // node of the current pair, null if none
+
+		Cursor(Node root) {
+			this.root = root;
+			reset();
+		}
+
+		public boolean next() {
+			while (depth >= 0) {
+				Node n = stack[depth];
+				if (pairs[depth] + 1 < n.payloadArity()) {
+					node = n;
+					pairs[depth]++;
+					return true;
+				}
+				pairs[depth] = n.payloadArity();
+				if (subs[depth] < n.nodeArity()) {
+					Node child = n.node(subs[depth]++);
+					depth++;
+					stack[depth] = child;
+					pairs[depth] = -1;
+					subs[depth] = 0;
+				} else {
+					stack[depth--] = null;
+				}
+			}
+			node = null;
+			return false;
+		}
+
+		@SuppressWarnings("unchecked")
+		public Key key() {
+			if (node == null)
+				throw new IllegalStateException("cursor is not on an entry");
+			return (Key) node.key(pairs[depth]);
+		}
+
+		@SuppressWarnings("unchecked")
+		public Value value() {
+			if (node == null)
+				throw new IllegalStateException("cursor is not on an entry");
+			return (Value) node.value(pairs[depth]);
+		}
+
+		public void reset() {
+			for (int d = 0; d <= depth && d < MAX_DEPTH; d++)
+				stack[d] = null;
+			depth = 0;
+			stack[0] = root;
+			pairs[0] = -1;
+			subs[0] = 0;
+			node = null;
+		}
+	}
+
+}
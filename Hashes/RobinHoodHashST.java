@@ -0,0 +1,393 @@
+package hashes;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.function.BiConsumer;
+
+import queue.Queue;
+
+/**
+ * Collision resolution by open addressing with Robin Hood insertion.
+ *
+ * Every occupied slot records its probe distance, the number of probes its
+ * key took to get there. An insertion that reaches a slot whose key is closer
+ * to home than itself takes the slot and carries the displaced key further,
+ * which keeps probe lengths short and even, so the table can run at 80-90%
+ * load instead of LinearProbingHashST's 50%.
+ *
+ * With LINEAR probing a lookup stops as soon as it sees a key closer to home
+ * than itself, and delete() shifts the rest of the cluster back one slot, so
+ * no tombstones are left and nothing is re-put. QUADRATIC and DOUBLE_HASHING
+ * probe sequences differ per key, so there delete() leaves a tombstone that
+ * lookups skip and the next resize drops.
+ */
+public class RobinHoodHashST<Key, Value> {
+
+	/**
+	 * The sequence of slots a key visits, starting at its home slot h. The
+	 * capacity is a power of two, so every sequence visits every slot.
+	 */
+	public enum ProbeStrategy {
+		/** h, h+1, h+2, ... */
+		LINEAR,
+		/** h, h+1, h+3, h+6, ... (triangular numbers) */
+		QUADRATIC,
+		/** h, h+s, h+2s, ... with an odd step s taken from the hash */
+		DOUBLE_HASHING
+	}
+
+	private static final int INIT_CAPACITY = 8;
+	private static final float DEFAULT_LOAD_FACTOR = 0.85f;
+
+	private static final int EMPTY = -1; // probe distance of a free slot
+	private static final int DELETED = -2; // probe distance of a tombstone
+
+	private int numberOfPairs; // number of key-value pairs
+	private int tombstones; // number of DELETED slots
+	private int capacity; // size of the table, a power of two
+	private int mask; // capacity - 1
+	private int maxFill; // resize once pairs plus tombstones reach this
+	private Key[] keys; // the keys
+	private Value[] vals; // the values
+	private int[] hashes; // spread hash code of each key
+	private int[] dists; // probe distance of each key, EMPTY or DELETED
+	private int modCount; // structural modifications, for fail-fast walks
+
+	private final ProbeStrategy strategy;
+	private final float loadFactor;
+
+	public RobinHoodHashST() {
+		this(ProbeStrategy.LINEAR, DEFAULT_LOAD_FACTOR);
+	}
+
+	public RobinHoodHashST(ProbeStrategy strategy) {
+		this(strategy, DEFAULT_LOAD_FACTOR);
+	}
+
+	/**
+	 * Initializes an empty symbol table.
+	 *
+	 * @param strategy
+	 *            the probe sequence to use
+	 * @param loadFactor
+	 *            the maximum fill ratio of the table, in (0, 1)
+	 * @throws IllegalArgumentException
+	 *             if strategy is null or loadFactor is out of range
+	 */
+	public RobinHoodHashST(ProbeStrategy strategy, float loadFactor) {
+		if (strategy == null)
+			throw new IllegalArgumentException("probe strategy is null");
+		if (!(loadFactor > 0 && loadFactor < 1))
+			throw new IllegalArgumentException("load factor must be in (0, 1)");
+		this.strategy = strategy;
+		this.loadFactor = loadFactor;
+		allocate(INIT_CAPACITY);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void allocate(int capacity) {
+		this.capacity = capacity;
+		mask = capacity - 1;
+		maxFill = Math.min(capacity - 1, (int) (capacity * loadFactor));
+		keys = (Key[]) new Object[capacity];
+		vals = (Value[]) new Object[capacity];
+		hashes = new int[capacity];
+		dists = new int[capacity];
+		Arrays.fill(dists, EMPTY);
+		tombstones = 0;
+	}
+
+	public ProbeStrategy strategy() {
+		return strategy;
+	}
+
+	/**
+	 * Returns the number of key-value pairs
+	 */
+	public int size() {
+		return numberOfPairs;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Returns true if this symbol table contains the specified key.
+	 */
+	public boolean contains(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to contains() is null");
+		return indexOf(key, hash(key)) >= 0;
+	}
+
+	// spread hash code of the key
+	private static int hash(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	// slot visited by the j-th probe of a key with hash h
+	private int slot(int h, int j) {
+		switch (strategy) {
+		case QUADRATIC:
+			return (h + j * (j + 1) / 2) & mask;
+		case DOUBLE_HASHING:
+			return (h + j * (Integer.rotateLeft(h, 16) | 1)) & mask;
+		default:
+			return (h + j) & mask;
+		}
+	}
+
+	// slot of the key with hash h, or -1 if the key is not in the table
+	private int indexOf(Key key, int h) {
+		for (int j = 0; j < capacity; j++) {
+			int i = slot(h, j);
+			int d = dists[i];
+			if (d == EMPTY)
+				return -1;
+			// a resident closer to home than us means we would have taken
+			// its slot on insertion
+			if (strategy == ProbeStrategy.LINEAR && d < j)
+				return -1;
+			if (d >= 0 && hashes[i] == h && keys[i].equals(key))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the value associated with the specified key.
+	 */
+	public Value get(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to get() is null");
+		int i = indexOf(key, hash(key));
+		return i >= 0 ? vals[i] : null;
+	}
+
+	/**
+	 * Inserts the specified key-value pair into the symbol table, overwriting
+	 * the old value with the new value if the symbol table already contains the
+	 * specified key. Deletes the specified key (and its associated value) from
+	 * this symbol table if the specified value is null.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if key is null
+	 */
+	public void put(Key key, Value val) {
+		if (key == null)
+			throw new IllegalArgumentException("first argument to put() is null");
+
+		if (val == null) {
+			delete(key);
+			return;
+		}
+
+		int h = hash(key);
+		int i = indexOf(key, h);
+		if (i >= 0) {
+			vals[i] = val;
+			return;
+		}
+
+		if (numberOfPairs + tombstones >= maxFill) {
+			// drop the tombstones if they are what fills the table
+			if (numberOfPairs >= maxFill / 2)
+				resize(2 * capacity);
+			else
+				resize(capacity);
+		}
+		insert(key, val, h);
+		numberOfPairs++;
+		modCount++;
+	}
+
+	// places a key known to be absent, displacing keys that are closer to home
+	private void insert(Key key, Value val, int h) {
+		for (int j = 0;; j++) {
+			int i = slot(h, j);
+			int d = dists[i];
+			if (d < 0) {
+				if (d == DELETED)
+					tombstones--;
+				keys[i] = key;
+				vals[i] = val;
+				hashes[i] = h;
+				dists[i] = j;
+				return;
+			}
+			if (d < j) {
+				// rob the richer key: take its slot and carry it onwards
+				Key k = keys[i];
+				Value v = vals[i];
+				int kh = hashes[i];
+				keys[i] = key;
+				vals[i] = val;
+				hashes[i] = h;
+				dists[i] = j;
+				key = k;
+				val = v;
+				h = kh;
+				j = d;
+			}
+		}
+	}
+
+	// re-inserts every key into a table of the given capacity, reusing the
+	// stored hashes
+	private void resize(int newCapacity) {
+		Key[] oldKeys = keys;
+		Value[] oldVals = vals;
+		int[] oldHashes = hashes;
+		int[] oldDists = dists;
+		allocate(newCapacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldDists[i] >= 0)
+				insert(oldKeys[i], oldVals[i], oldHashes[i]);
+		}
+	}
+
+	/**
+	 * Removes the specified key and its associated value from this symbol table
+	 * (if the key is in this symbol table).
+	 */
+	public void delete(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to delete() is null");
+		int i = indexOf(key, hash(key));
+		if (i < 0)
+			return;
+
+		if (strategy == ProbeStrategy.LINEAR) {
+			// backward shift: pull each following key of the cluster one
+			// slot closer to home until a free slot or a key at home
+			int next = (i + 1) & mask;
+			while (dists[next] > 0) {
+				keys[i] = keys[next];
+				vals[i] = vals[next];
+				hashes[i] = hashes[next];
+				dists[i] = dists[next] - 1;
+				i = next;
+				next = (next + 1) & mask;
+			}
+			dists[i] = EMPTY;
+		} else {
+			dists[i] = DELETED;
+			tombstones++;
+		}
+		keys[i] = null;
+		vals[i] = null;
+		numberOfPairs--;
+		modCount++;
+
+		// halves size of array if it's 12.5% full or less
+		if (capacity > INIT_CAPACITY && numberOfPairs <= capacity / 8)
+			resize(capacity / 2);
+
+		assert check();
+	}
+
+	/**
+	 * Returns all keys in this symbol table as an Iterable.
+	 */
+	public Iterable<Key> keys() {
+		Queue<Key> queue = new Queue<Key>();
+		for (int i = 0; i < capacity; i++)
+			if (dists[i] >= 0)
+				queue.enqueue(keys[i]);
+		return queue;
+	}
+
+	/**
+	 * Passes every key and its value to the action, without allocating.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if action is null
+	 * @throws ConcurrentModificationException
+	 *             if the action adds or removes a key
+	 */
+	public void forEach(BiConsumer<? super Key, ? super Value> action) {
+		if (action == null)
+			throw new IllegalArgumentException("argument to forEach() is null");
+		int expectedModCount = modCount;
+		Key[] keys = this.keys;
+		Value[] vals = this.vals;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				action.accept(keys[i], vals[i]);
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+			}
+		}
+	}
+
+	/**
+	 * Returns a cursor over the entries of this symbol table; reset() makes
+	 * it reusable for later scans.
+	 */
+	public EntryCursor<Key, Value> cursor() {
+		return new Cursor();
+	}
+
+	// walks the slots of the table as it was when created or last reset
+	private class Cursor implements EntryCursor<Key, Value> {
+		private Key[] keys;
+		private Value[] vals;
+		private int slot; // current slot, or -1 before the first
+		private int expectedModCount;
+
+		Cursor() {
+			reset();
+		}
+
+		public boolean next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			while (++slot < keys.length)
+				if (keys[slot] != null)
+					return true;
+			slot = keys.length;
+			return false;
+		}
+
+		public Key key() {
+			if (slot < 0 || slot >= keys.length)
+				throw new IllegalStateException("cursor is not on an entry");
+			return keys[slot];
+		}
+
+		public Value value() {
+			if (slot < 0 || slot >= keys.length)
+				throw new IllegalStateException("cursor is not on an entry");
+			return vals[slot];
+		}
+
+		public void reset() {
+			keys = RobinHoodHashST.this.keys;
+			vals = RobinHoodHashST.this.vals;
+			slot = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	// integrity check - every key can be found by get() and sits at the slot
+	// its recorded probe distance names
+	private boolean check() {
+		if (numberOfPairs + tombstones > maxFill) {
+			System.err.println("Hash table size m = " + capacity + "; pairs n = " + numberOfPairs
+					+ "; tombstones = " + tombstones);
+			return false;
+		}
+		for (int i = 0; i < capacity; i++) {
+			if (dists[i] < 0)
+				continue;
+			if (slot(hashes[i], dists[i]) != i || get(keys[i]) != vals[i]) {
+				System.err.println("get[" + keys[i] + "] = " + get(keys[i]) + "; vals[i] = " + vals[i]);
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
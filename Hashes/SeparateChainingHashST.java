@@ -1,27 +1,304 @@
 package hashes;
 
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.function.BiConsumer;
+import queue.Queue;
+
 /**
  * Collision resolution by chaining (closed addressing)
+ *
+ * The table doubles once chains average MAX_AVG_CHAIN nodes and halves when
+ * they average two or fewer, never going below the initial size. In
+ * incremental mode a resize keeps the old bucket array and every operation
+ * moves the next REHASH_STEPS old chains across. A key whose old bucket has
+ * not been moved yet is still looked up, updated and deleted in the old
+ * array, so each key lives in exactly one place during the rehash.
+ *
+ * A chain that grows past TREEIFY_THRESHOLD nodes, which only a skewed or
+ * hostile key set produces, is replaced by a TreeBin: an AVL tree ordered by
+ * hash code and then by compareTo() when the keys are Comparable. That bounds
+ * a lookup in the bucket at O(log n). Remaining ties are placed by class
+ * name and identity hash code, and a lookup that meets one searches both
+ * sides. The bucket turns back into a chain once it shrinks to
+ * UNTREEIFY_THRESHOLD nodes.
+ *
+ * Every node keeps its key's hash code: chain walks compare it before
+ * calling equals(), and resizes and treeification reuse it.
+ *
+ * enableFilter() puts a BlockedBloomFilter of the key hash codes in front of
+ * the chains, so most get() and contains() calls for absent keys return
+ * without walking a chain. put() adds to the filter; since a Bloom filter
+ * cannot forget, it is rebuilt from the table once the keys outgrow it or
+ * deletes have left it stale.
+ *
+ * forEach() and cursor() walk the buckets in place, chains and trees alike,
+ * without copying keys into a queue. Both fail fast if a key is added or
+ * removed during the walk. In incremental mode, starting a walk finishes any
+ * rehash in progress, so that lookups made during the walk do not move
+ * chains under it.
+ *
+ * stats() reports the chain length histogram, the longest chain and the
+ * number and duration of resizes, for monitoring.
  */
 
 public class SeparateChainingHashST<Key, Value> {
+	private static final int MAX_AVG_CHAIN = 8; // grow once chains average this
+	private static final int REHASH_STEPS = 4; // old chains moved per operation
+	private static final int TREEIFY_THRESHOLD = 4 * MAX_AVG_CHAIN; // chain to tree
+	private static final int UNTREEIFY_THRESHOLD = 2 * MAX_AVG_CHAIN; // tree to chain
 
 	private int numKVPairs; // number of key-value pairs
 	private int size; // hash table size
 	private Node[] st; // array of linked-list symbol tables
+	private final int minSize; // never shrink below the initial size
+
+	private final boolean incremental; // rehash a few chains per operation?
+	private Node[] oldSt; // bucket array being drained, null if none
+	private int rehashIndex; // next old bucket to move
+	private int modCount; // structural modifications, for fail-fast walks
+	private long resizes; // number of resizes
+	private long resizeNanos; // time spent in them
+
+	private BlockedBloomFilter filter; // null unless enabled
+	private int filterBitsPerKey;
+	private int filterDeletes; // deletes since the filter was built
 
 	private static class Node {
-		private Object key;
-		private Object val;
-		private Node next;
+		final int hash;
+		Object key;
+		Object val;
+		Node next;
 
-		public Node(Object key, Object val, Node next) {
+		public Node(int hash, Object key, Object val, Node next) {
+			this.hash = hash;
 			this.key = key;
 			this.val = val;
 			this.next = next;
 		}
 	}
 
+	private static final class TreeNode extends Node {
+		private TreeNode left, right;
+		private int height = 1;
+
+		TreeNode(int hash, Object key, Object val) {
+			super(hash, key, val, null);
+		}
+	}
+
+	// head of a treeified bucket; holds no key itself
+	private static final class TreeBin extends Node {
+		private TreeNode root;
+		private int count;
+		private boolean removed; // set by remove() when it unlinks a node
+
+		TreeBin() {
+			super(0, null, null, null);
+		}
+
+		// orders by hash, then by compareTo() for mutually comparable keys;
+		// 0 means a search cannot tell which side of x the key is on
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private static int compare(int h, Object key, TreeNode x) {
+			if (h != x.hash)
+				return h < x.hash ? -1 : 1;
+			if (key instanceof Comparable && key.getClass() == x.key.getClass())
+				return ((Comparable) key).compareTo(x.key);
+			return 0;
+		}
+
+		// total order for placing a node: compare(), with ties broken by class
+		// name and then by identity hash code, as java.util.HashMap does, so
+		// that rotations keep the keys that compare() does order in order
+		private static int order(int h, Object key, TreeNode x) {
+			int c = compare(h, key, x);
+			if (c == 0)
+				c = key.getClass().getName().compareTo(x.key.getClass().getName());
+			if (c == 0)
+				c = Integer.compare(System.identityHashCode(key), System.identityHashCode(x.key));
+			return c;
+		}
+
+		TreeNode find(int h, Object key) {
+			return find(root, h, key);
+		}
+
+		private static TreeNode find(TreeNode x, int h, Object key) {
+			while (x != null) {
+				if (h == x.hash && key.equals(x.key))
+					return x;
+				int c = compare(h, key, x);
+				if (c < 0)
+					x = x.left;
+				else if (c > 0)
+					x = x.right;
+				else {
+					// cannot tell which side, search both
+					TreeNode r = find(x.right, h, key);
+					if (r != null)
+						return r;
+					x = x.left;
+				}
+			}
+			return null;
+		}
+
+		// returns true if the key was added, false if its value was replaced
+		boolean put(int h, Object key, Object val) {
+			TreeNode x = find(h, key);
+			if (x != null) {
+				x.val = val;
+				return false;
+			}
+			root = insert(root, new TreeNode(h, key, val));
+			count++;
+			assert check();
+			return true;
+		}
+
+		private static TreeNode insert(TreeNode x, TreeNode n) {
+			if (x == null)
+				return n;
+			if (order(n.hash, n.key, x) < 0)
+				x.left = insert(x.left, n);
+			else
+				x.right = insert(x.right, n);
+			return balance(x);
+		}
+
+		// returns true if the key was in the tree
+		boolean remove(int h, Object key) {
+			TreeNode x = find(h, key);
+			if (x == null)
+				return false;
+			removed = false;
+			root = remove(root, x);
+			count--;
+			assert check();
+			return true;
+		}
+
+		private TreeNode remove(TreeNode x, TreeNode n) {
+			if (x == null)
+				return null;
+			if (x == n) {
+				removed = true;
+				if (x.left == null)
+					return x.right;
+				if (x.right == null)
+					return x.left;
+				TreeNode successor = min(x.right);
+				successor.right = removeMin(x.right);
+				successor.left = x.left;
+				return balance(successor);
+			}
+			int c = order(n.hash, n.key, x);
+			if (c < 0)
+				x.left = remove(x.left, n);
+			else if (c > 0)
+				x.right = remove(x.right, n);
+			else {
+				x.left = remove(x.left, n);
+				if (!removed)
+					x.right = remove(x.right, n);
+			}
+			return balance(x);
+		}
+
+		private static TreeNode min(TreeNode x) {
+			while (x.left != null)
+				x = x.left;
+			return x;
+		}
+
+		private static TreeNode removeMin(TreeNode x) {
+			if (x.left == null)
+				return x.right;
+			x.left = removeMin(x.left);
+			return balance(x);
+		}
+
+		private static int height(TreeNode x) {
+			return x == null ? 0 : x.height;
+		}
+
+		private static TreeNode balance(TreeNode x) {
+			int bf = height(x.left) - height(x.right);
+			if (bf > 1) {
+				if (height(x.left.left) < height(x.left.right))
+					x.left = rotateLeft(x.left);
+				return rotateRight(x);
+			}
+			if (bf < -1) {
+				if (height(x.right.right) < height(x.right.left))
+					x.right = rotateRight(x.right);
+				return rotateLeft(x);
+			}
+			x.height = 1 + Math.max(height(x.left), height(x.right));
+			return x;
+		}
+
+		private static TreeNode rotateRight(TreeNode x) {
+			TreeNode y = x.left;
+			x.left = y.right;
+			y.right = x;
+			x.height = 1 + Math.max(height(x.left), height(x.right));
+			y.height = 1 + Math.max(height(y.left), height(y.right));
+			return y;
+		}
+
+		private static TreeNode rotateLeft(TreeNode x) {
+			TreeNode y = x.right;
+			x.right = y.left;
+			y.left = x;
+			x.height = 1 + Math.max(height(x.left), height(x.right));
+			y.height = 1 + Math.max(height(y.left), height(y.right));
+			return y;
+		}
+
+		// checks that the nodes are in order and each is found by its key
+		private boolean check() {
+			TreeNode[] prev = new TreeNode[1];
+			int n = check(root, prev);
+			if (n != count) {
+				System.err.println("TreeBin count " + count + " but " + n + " nodes in order");
+				return false;
+			}
+			return true;
+		}
+
+		// returns the number of nodes under x that check out, walking in order
+		private int check(TreeNode x, TreeNode[] prev) {
+			if (x == null)
+				return 0;
+			int n = check(x.left, prev);
+			if (prev[0] != null && order(x.hash, x.key, prev[0]) < 0) {
+				System.err.println("TreeBin out of order at key " + x.key);
+				return -1;
+			}
+			if (find(x.hash, x.key) != x) {
+				System.err.println("TreeBin cannot find key " + x.key);
+				return -1;
+			}
+			prev[0] = x;
+			return n + 1 + check(x.right, prev);
+		}
+
+		// unlinks the tree into a plain chain of its nodes
+		Node toChain() {
+			return toChain(root, null);
+		}
+
+		private static Node toChain(TreeNode x, Node chain) {
+			if (x == null)
+				return chain;
+			chain = toChain(x.right, chain);
+			x.next = chain;
+			return toChain(x.left, x);
+		}
+	}
+
 	// create separate chaining hash table
 	public SeparateChainingHashST() {
 		this(997);
@@ -29,13 +306,153 @@ public class SeparateChainingHashST<Key, Value> {
 
 	// create separate chaining hash table with m lists
 	public SeparateChainingHashST(int m) {
+		this(m, false);
+	}
+
+	// create separate chaining hash table with m lists, resizing
+	// incrementally if asked to
+	public SeparateChainingHashST(int m, boolean incremental) {
 		this.size = m;
+		this.minSize = m;
+		this.incremental = incremental;
 		st = new Node[m];
 	}
 
-	// hash value between 0 and m-1
-	private int hash(Key key) {
-		return (key.hashCode() & 0x7fffffff) % size;
+	// bucket array holding the chain of a key with hash code h: buckets of
+	// the old array that have not been moved yet still own their keys
+	private Node[] chainsFor(int h) {
+		if (oldSt != null && (h & 0x7fffffff) % oldSt.length >= rehashIndex)
+			return oldSt;
+		return st;
+	}
+
+	private static int indexIn(Node[] chains, int h) {
+		return (h & 0x7fffffff) % chains.length;
+	}
+
+	// rehashes into m lists, or in incremental mode starts draining the
+	// current lists into m new ones
+	private void resize(int m) {
+		long start = System.nanoTime();
+		finishRehash();
+		modCount++;
+		Node[] old = st;
+		st = new Node[m];
+		size = m;
+		if (incremental) {
+			oldSt = old;
+			rehashIndex = 0;
+		} else {
+			for (int i = 0; i < old.length; i++)
+				moveChain(old[i]);
+		}
+		resizes++;
+		resizeNanos += System.nanoTime() - start;
+	}
+
+	// relinks every node of the bucket into the new table
+	private void moveChain(Node x) {
+		if (x instanceof TreeBin)
+			x = ((TreeBin) x).toChain();
+		while (x != null) {
+			Node next = x.next;
+			link(st, indexIn(st, x.hash), x);
+			x = next;
+		}
+	}
+
+	// adds the node of a key known to be absent to bucket i
+	private static void link(Node[] chains, int i, Node x) {
+		Node head = chains[i];
+		if (head instanceof TreeBin) {
+			((TreeBin) head).put(x.hash, x.key, x.val);
+			return;
+		}
+		x.next = head;
+		chains[i] = x;
+		int length = 0;
+		for (Node y = x; y != null && length <= TREEIFY_THRESHOLD; y = y.next)
+			length++;
+		if (length > TREEIFY_THRESHOLD)
+			chains[i] = treeify(x);
+	}
+
+	private static TreeBin treeify(Node x) {
+		TreeBin bin = new TreeBin();
+		for (; x != null; x = x.next)
+			bin.put(x.hash, x.key, x.val);
+		return bin;
+	}
+
+	// moves up to REHASH_STEPS old chains into the new table
+	private void rehashStep() {
+		for (int n = 0; n < REHASH_STEPS && oldSt != null; n++) {
+			int i = rehashIndex;
+			Node x = oldSt[i];
+			oldSt[i] = null;
+			// advance first so the moved keys are looked up in st
+			rehashIndex++;
+			moveChain(x);
+			if (rehashIndex == oldSt.length)
+				oldSt = null;
+		}
+	}
+
+	private void finishRehash() {
+		while (oldSt != null)
+			rehashStep();
+	}
+
+	/**
+	 * Puts a blocked Bloom filter in front of the chains, or rebuilds it if
+	 * it is already enabled. The filter is sized for twice the current keys
+	 * and has bitsPerKey bits per key once that full; it is rebuilt when the
+	 * keys pass that or deletes reach a quarter of the keys it was built
+	 * with.
+	 */
+	public void enableFilter(int bitsPerKey) {
+		filterBitsPerKey = bitsPerKey;
+		rebuildFilter();
+	}
+
+	public void disableFilter() {
+		filter = null;
+	}
+
+	/**
+	 * Returns the filter with its statistics, or null if it is disabled.
+	 */
+	public BlockedBloomFilter filter() {
+		return filter;
+	}
+
+	// refills a filter sized for twice the current keys from the chains
+	private void rebuildFilter() {
+		BlockedBloomFilter f = new BlockedBloomFilter(Math.max(64, 2 * numKVPairs), filterBitsPerKey);
+		if (filter != null)
+			f.inheritCounters(filter);
+		for (int i = 0; i < st.length; i++)
+			addHashes(st[i], f);
+		if (oldSt != null)
+			for (int i = rehashIndex; i < oldSt.length; i++)
+				addHashes(oldSt[i], f);
+		filter = f;
+		filterDeletes = 0;
+	}
+
+	private static void addHashes(Node head, BlockedBloomFilter f) {
+		if (head instanceof TreeBin)
+			addHashes(((TreeBin) head).root, f);
+		else
+			for (Node x = head; x != null; x = x.next)
+				f.add(x.hash);
+	}
+
+	private static void addHashes(TreeNode x, BlockedBloomFilter f) {
+		for (; x != null; x = x.right) {
+			addHashes(x.left, f);
+			f.add(x.hash);
+		}
 	}
 
 	// return number of key-value pairs 
@@ -54,11 +471,25 @@ public class SeparateChainingHashST<Key, Value> {
 
 	// return value associated with key, null if no such key
 	public Value get(Key key) {
-		int i = hash(key);
-		for (Node x = st[i]; x != null; x = x.next) {
-			if (key.equals(x.key))
+		if (oldSt != null)
+			rehashStep();
+		int h = key.hashCode();
+		if (filter != null && !filter.mightContain(h))
+			return null;
+		Node[] chains = chainsFor(h);
+		Node head = chains[indexIn(chains, h)];
+		if (head instanceof TreeBin) {
+			TreeNode x = ((TreeBin) head).find(h, key);
+			if (x != null)
 				return (Value) x.val;
+		} else {
+			for (Node x = head; x != null; x = x.next) {
+				if (x.hash == h && key.equals(x.key))
+					return (Value) x.val;
+			}
 		}
+		if (filter != null)
+			filter.falsePositive();
 		return null;
 	}
 
@@ -68,31 +499,261 @@ public class SeparateChainingHashST<Key, Value> {
 			delete(key);
 			return;
 		}
-		int i = hash(key);
-		for (Node x = st[i]; x != null; x = x.next) {
-			if (key.equals(x.key)) {
-				x.val = val;
+		if (oldSt != null)
+			rehashStep();
+		int h = key.hashCode();
+		Node[] chains = chainsFor(h);
+		int i = indexIn(chains, h);
+		Node head = chains[i];
+		if (head instanceof TreeBin) {
+			if (!((TreeBin) head).put(h, key, val))
 				return;
+		} else {
+			int length = 0;
+			for (Node x = head; x != null; x = x.next, length++) {
+				if (x.hash == h && key.equals(x.key)) {
+					x.val = val;
+					return;
+				}
 			}
+			chains[i] = new Node(h, key, val, head);
+			if (length + 1 > TREEIFY_THRESHOLD)
+				chains[i] = treeify(chains[i]);
 		}
 		numKVPairs++;
-		st[i] = new Node(key, val, st[i]);
+		modCount++;
+		if (filter != null) {
+			if (numKVPairs > filter.capacity())
+				rebuildFilter();
+			else
+				filter.add(h);
+		}
+
+		// double table size if average length of list >= MAX_AVG_CHAIN
+		if (numKVPairs >= MAX_AVG_CHAIN * size)
+			resize(2 * size);
 	}
 
 	// delete key (and associated value) 
 	public void delete(Key key) {
-		throw new UnsupportedOperationException("delete not currently supported");
+		if (oldSt != null)
+			rehashStep();
+		int h = key.hashCode();
+		Node[] chains = chainsFor(h);
+		int i = indexIn(chains, h);
+		Node head = chains[i];
+		if (head instanceof TreeBin) {
+			TreeBin bin = (TreeBin) head;
+			if (!bin.remove(h, key))
+				return;
+			if (bin.count <= UNTREEIFY_THRESHOLD)
+				chains[i] = bin.toChain();
+		} else {
+			Node prev = null;
+			Node x;
+			for (x = head; x != null; prev = x, x = x.next) {
+				if (x.hash == h && key.equals(x.key))
+					break;
+			}
+			if (x == null)
+				return;
+			if (prev == null)
+				chains[i] = x.next;
+			else
+				prev.next = x.next;
+		}
+		numKVPairs--;
+		modCount++;
+		if (filter != null && ++filterDeletes > filter.capacity() / 8)
+			rebuildFilter();
+
+		// halve table size if average length of list <= 2
+		if (size / 2 >= minSize && numKVPairs <= 2 * size)
+			resize(size / 2);
+	}
+
+	/**
+	 * Returns the chain length histogram, longest chain and resize counts of
+	 * this symbol table. A tree bin counts as a chain of all its keys; the
+	 * unmoved buckets of an incremental rehash are counted as well.
+	 */
+	public HashTableStats stats() {
+		int buckets = st.length + (oldSt != null ? oldSt.length - rehashIndex : 0);
+		HashTableStats.Builder b = new HashTableStats.Builder("SeparateChainingHashST", HashTableStats.Kind.CHAIN,
+				numKVPairs, buckets);
+		for (int i = 0; i < st.length; i++)
+			chainStats(st[i], b);
+		if (oldSt != null)
+			for (int i = rehashIndex; i < oldSt.length; i++)
+				chainStats(oldSt[i], b);
+		return b.resizes(resizes, resizeNanos).build();
+	}
+
+	private static void chainStats(Node head, HashTableStats.Builder b) {
+		int length = 0;
+		if (head instanceof TreeBin)
+			length = ((TreeBin) head).count;
+		else
+			for (Node x = head; x != null; x = x.next)
+				length++;
+		b.length(length).cluster(length);
 	}
 
 	// return all keys as an Iterable
 	public Iterable<Key> keys() {
 		Queue<Key> queue = new Queue<Key>();
-		for (int i = 0; i < size; i++) {
-			for (Node x = st[i]; x != null; x = x.next) {
+		for (int i = 0; i < size; i++)
+			enqueueKeys(st[i], queue);
+		if (oldSt != null)
+			for (int i = rehashIndex; i < oldSt.length; i++)
+				enqueueKeys(oldSt[i], queue);
+		return queue;
+	}
+
+	private void enqueueKeys(Node head, Queue<Key> queue) {
+		if (head instanceof TreeBin)
+			enqueueKeys(((TreeBin) head).root, queue);
+		else
+			for (Node x = head; x != null; x = x.next)
 				queue.enqueue((Key) x.key);
+	}
+
+	private void enqueueKeys(TreeNode x, Queue<Key> queue) {
+		if (x == null)
+			return;
+		enqueueKeys(x.left, queue);
+		queue.enqueue((Key) x.key);
+		enqueueKeys(x.right, queue);
+	}
+
+	/**
+	 * Passes every key and its value to the action, without allocating.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if action is null
+	 * @throws ConcurrentModificationException
+	 *             if the action adds or removes a key
+	 */
+	public void forEach(BiConsumer<? super Key, ? super Value> action) {
+		if (action == null)
+			throw new IllegalArgumentException("argument to forEach() is null");
+		finishRehash();
+		int expectedModCount = modCount;
+		Node[] chains = st;
+		for (int i = 0; i < chains.length; i++) {
+			Node head = chains[i];
+			if (head instanceof TreeBin)
+				forEach(((TreeBin) head).root, action, expectedModCount);
+			else
+				for (Node x = head; x != null; x = x.next)
+					accept(x, action, expectedModCount);
+		}
+	}
+
+	private void forEach(TreeNode x, BiConsumer<? super Key, ? super Value> action, int expectedModCount) {
+		for (; x != null; x = x.right) {
+			forEach(x.left, action, expectedModCount);
+			accept(x, action, expectedModCount);
+		}
+	}
+
+	private void accept(Node x, BiConsumer<? super Key, ? super Value> action, int expectedModCount) {
+		action.accept((Key) x.key, (Value) x.val);
+		if (modCount != expectedModCount)
+			throw new ConcurrentModificationException();
+	}
+
+	/**
+	 * Returns a cursor over the entries of this symbol table; reset() makes
+	 * it reusable for later scans.
+	 */
+	public EntryCursor<Key, Value> cursor() {
+		return new Cursor();
+	}
+
+	// walks the buckets as they were when created or last reset; a tree bin
+	// is walked in preorder with a stack kept across scans
+	private class Cursor implements EntryCursor<Key, Value> {
+		private Node[] chains;
+		private int bucket; // current bucket, or -1 before the first
+		private Node current; // current entry, null if none
+		private Node chainNext; // rest of the current chain
+		private TreeNode[] stack = new TreeNode[64]; // more than an AVL tree's height
+		private int depth; // tree nodes left on the stack
+		private int expectedModCount;
+
+		Cursor() {
+			reset();
+		}
+
+		public boolean next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (chainNext != null) {
+				current = chainNext;
+				chainNext = current.next;
+				return true;
 			}
+			if (depth > 0)
+				return pop();
+			while (++bucket < chains.length) {
+				Node head = chains[bucket];
+				if (head instanceof TreeBin) {
+					TreeNode root = ((TreeBin) head).root;
+					if (root != null) {
+						push(root);
+						return pop();
+					}
+				} else if (head != null) {
+					current = head;
+					chainNext = head.next;
+					return true;
+				}
+			}
+			bucket = chains.length;
+			current = null;
+			return false;
+		}
+
+		private boolean pop() {
+			TreeNode x = stack[--depth];
+			stack[depth] = null;
+			if (x.right != null)
+				push(x.right);
+			if (x.left != null)
+				push(x.left);
+			current = x;
+			return true;
+		}
+
+		private void push(TreeNode x) {
+			if (depth == stack.length)
+				stack = Arrays.copyOf(stack, 2 * depth);
+			stack[depth++] = x;
+		}
+
+		public Key key() {
+			if (current == null)
+				throw new IllegalStateException("cursor is not on an entry");
+			return (Key) current.key;
+		}
+
+		public Value value() {
+			if (current == null)
+				throw new IllegalStateException("cursor is not on an entry");
+			return (Value) current.val;
+		}
+
+		public void reset() {
+			finishRehash();
+			chains = st;
+			bucket = -1;
+			current = null;
+			chainNext = null;
+			while (depth > 0)
+				stack[--depth] = null;
+			expectedModCount = modCount;
 		}
-		return queue;
 	}
 
 }
@@ -0,0 +1,85 @@
+package dataStructures;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only word/definition dictionary over a minimal perfect hash.
+ *
+ * The words and definitions sit in two dense arrays ordered by their
+ * MinimalPerfectHash index, so find() hashes the word, reads one slot of
+ * each array and compares a single stored word; there are no chains and no
+ * per-entry nodes. Suited to data that is built once per release, such as
+ * HashFunction's elementsToAdd.
+ */
+public class StaticDictionary {
+	private final MinimalPerfectHash index;
+	private final String[] words;
+	private final String[] definitions;
+
+	private StaticDictionary(MinimalPerfectHash index, String[] words, String[] definitions) {
+		this.index = index;
+		this.words = words;
+		this.definitions = definitions;
+	}
+
+	/**
+	 * Builds a dictionary from {word, definition} pairs. A word listed twice
+	 * keeps its last definition.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a word or definition is null
+	 */
+	public static StaticDictionary build(String[][] elements) {
+		Map<String, String> unique = new LinkedHashMap<String, String>();
+		for (int i = 0; i < elements.length; i++) {
+			if (elements[i] == null || elements[i][0] == null || elements[i][1] == null)
+				throw new IllegalArgumentException("entry " + i + " is null");
+			unique.put(elements[i][0], elements[i][1]);
+		}
+		String[] keys = unique.keySet().toArray(new String[0]);
+		MinimalPerfectHash index = MinimalPerfectHash.build(keys);
+		assert index.check(keys);
+
+		String[] words = new String[keys.length];
+		String[] definitions = new String[keys.length];
+		for (String key : keys) {
+			int i = index.index(key);
+			words[i] = key;
+			definitions[i] = unique.get(key);
+		}
+		return new StaticDictionary(index, words, definitions);
+	}
+
+	public int size() {
+		return words.length;
+	}
+
+	/**
+	 * Returns the definition of the word, or null if it is not in the
+	 * dictionary.
+	 */
+	public String find(String wordToFind) {
+		if (wordToFind == null)
+			throw new IllegalArgumentException("argument to find() is null");
+		int i = index.index(wordToFind);
+		return i >= 0 && words[i].equals(wordToFind) ? definitions[i] : null;
+	}
+
+	public boolean contains(String word) {
+		return find(word) != null;
+	}
+
+	/**
+	 * Returns the bits of hash metadata per word.
+	 */
+	public double bitsPerKey() {
+		return index.bitsPerKey();
+	}
+
+	@Override
+	public String toString() {
+		return "StaticDictionary(" + index + ")";
+	}
+
+}
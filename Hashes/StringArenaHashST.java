@@ -0,0 +1,528 @@
+package hashes;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+import queue.Queue;
+
+/**
+ * Symbol table with String keys stored as UTF-8 bytes in a shared arena.
+ *
+ * A LinearProbingHashST<String, V> pays for a String object and its byte
+ * array per key, and the collector has to mark both. Here the key bytes are
+ * appended to large byte[] chunks, and each slot keeps only the chunk,
+ * offset and length of its key packed into a long, plus the hash in an int
+ * array: 16 bytes a slot with the value reference. A table of millions of
+ * keys is then a handful of arrays plus one chunk per CHUNK_SIZE bytes of
+ * keys, none of which hold references for the collector to follow, apart
+ * from the values. Keys are limited to MAX_KEY_LENGTH bytes.
+ *
+ * Lookups take a CharSequence or a UTF-8 byte slice. A CharSequence is
+ * hashed and compared through its UTF-8 encoding a character at a time, so
+ * neither kind of lookup allocates. Collisions are resolved by linear
+ * probing over a power-of-two table up to 3/4 full, and delete() shifts
+ * the rest of the cluster back instead of leaving tombstones. The bytes of
+ * a deleted key stay in the arena until dead bytes make up half of it;
+ * then the live keys are copied into fresh chunks.
+ */
+public class StringArenaHashST<Value> {
+	private static final int INIT_CAPACITY = 16;
+	private static final int CHUNK_SIZE = 1 << 20; // bytes per arena chunk
+	private static final int MAX_CHUNKS = 1 << 19; // arena of 512 GB
+	private static final int MAX_KEY_LENGTH = (1 << 24) - 1; // UTF-8 bytes
+	private static final long EMPTY = -1; // ref of a free slot
+
+	private static final int FNV_OFFSET = 0x811C9DC5;
+	private static final int FNV_PRIME = 0x01000193;
+
+	private int numberOfPairs; // number of key-value pairs
+	private int mask; // capacity - 1
+	private long[] refs; // chunk << 44 | offset << 24 | length of each key, or EMPTY
+	private int[] hashes; // hash of each key's bytes
+	private Value[] vals; // the values
+
+	private byte[][] chunks = new byte[1][];
+	private int chunkCount; // chunks in use
+	private int chunkUsed; // bytes used in the last chunk
+	private long arenaBytes; // bytes appended, live or dead
+	private long deadBytes; // bytes of deleted keys
+
+	public StringArenaHashST() {
+		this(INIT_CAPACITY);
+	}
+
+	/**
+	 * Initializes an empty symbol table that holds capacity pairs without
+	 * resizing.
+	 */
+	public StringArenaHashST(int capacity) {
+		int m = INIT_CAPACITY;
+		while (m / 4 * 3 < capacity && m < 1 << 30)
+			m <<= 1;
+		allocate(m);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void allocate(int capacity) {
+		mask = capacity - 1;
+		refs = new long[capacity];
+		Arrays.fill(refs, EMPTY);
+		hashes = new int[capacity];
+		vals = (Value[]) new Object[capacity];
+	}
+
+	/**
+	 * Returns the number of key-value pairs
+	 */
+	public int size() {
+		return numberOfPairs;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Returns the number of arena bytes in use, including deleted keys not
+	 * yet compacted away.
+	 */
+	public long arenaBytes() {
+		return arenaBytes;
+	}
+
+	public long wastedBytes() {
+		return deadBytes;
+	}
+
+	private static int chunkOf(long ref) {
+		return (int) (ref >>> 44);
+	}
+
+	private static int offsetOf(long ref) {
+		return (int) (ref >>> 24) & (CHUNK_SIZE - 1);
+	}
+
+	private static int lengthOf(long ref) {
+		return (int) ref & MAX_KEY_LENGTH;
+	}
+
+	// returns the UTF-8 bytes of the character at i of s packed into an
+	// int, first byte lowest; an unpaired surrogate becomes '?', as
+	// String.getBytes() would make it. Lookups keep the bytes on the stack,
+	// so threads may share a table that is no longer modified.
+	private static int encode(CharSequence s, int i) {
+		char c = s.charAt(i);
+		if (c < 0x80)
+			return c;
+		if (c < 0x800)
+			return (0xC0 | c >> 6) | (0x80 | c & 0x3F) << 8;
+		if (Character.isSurrogate(c)) {
+			if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(i + 1));
+				return (0xF0 | cp >> 18) | (0x80 | cp >> 12 & 0x3F) << 8 | (0x80 | cp >> 6 & 0x3F) << 16
+						| (0x80 | cp & 0x3F) << 24;
+			}
+			return '?';
+		}
+		return (0xE0 | c >> 12) | (0x80 | c >> 6 & 0x3F) << 8 | (0x80 | c & 0x3F) << 16;
+	}
+
+	// number of bytes in an encoding, read from its lead byte; four bytes
+	// encode a surrogate pair, which is two chars
+	private static int byteCount(int utf8) {
+		int lead = utf8 & 0xFF;
+		return lead < 0x80 ? 1 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : 4;
+	}
+
+	// FNV-1a over the UTF-8 bytes, finished with a mix so the low bits that
+	// pick the slot depend on every byte
+	private static int finish(int h) {
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		return h;
+	}
+
+	private static int hash(CharSequence s) {
+		int h = FNV_OFFSET;
+		for (int i = 0; i < s.length();) {
+			int utf8 = encode(s, i);
+			int n = byteCount(utf8);
+			for (int b = 0; b < n; b++)
+				h = (h ^ (utf8 >>> 8 * b & 0xFF)) * FNV_PRIME;
+			i += n == 4 ? 2 : 1;
+		}
+		return finish(h);
+	}
+
+	private static int hash(byte[] bytes, int offset, int length) {
+		int h = FNV_OFFSET;
+		for (int i = offset; i < offset + length; i++)
+			h = (h ^ (bytes[i] & 0xFF)) * FNV_PRIME;
+		return finish(h);
+	}
+
+	private static int utf8Length(CharSequence s) {
+		int length = 0;
+		for (int i = 0; i < s.length();) {
+			int n = byteCount(encode(s, i));
+			length += n;
+			i += n == 4 ? 2 : 1;
+		}
+		return length;
+	}
+
+	private boolean keyEquals(int slot, CharSequence s) {
+		long ref = refs[slot];
+		byte[] chunk = chunks[chunkOf(ref)];
+		int p = offsetOf(ref);
+		int end = p + lengthOf(ref);
+		for (int i = 0; i < s.length();) {
+			int utf8 = encode(s, i);
+			int n = byteCount(utf8);
+			if (end - p < n)
+				return false;
+			for (int b = 0; b < n; b++)
+				if (chunk[p++] != (byte) (utf8 >>> 8 * b))
+					return false;
+			i += n == 4 ? 2 : 1;
+		}
+		return p == end;
+	}
+
+	private boolean keyEquals(int slot, byte[] bytes, int offset, int length) {
+		long ref = refs[slot];
+		if (lengthOf(ref) != length)
+			return false;
+		byte[] chunk = chunks[chunkOf(ref)];
+		int p = offsetOf(ref);
+		for (int i = 0; i < length; i++)
+			if (chunk[p + i] != bytes[offset + i])
+				return false;
+		return true;
+	}
+
+	// slot of the key, or the complement of the empty slot ending its probe
+	private int indexOf(CharSequence key, int h) {
+		int i;
+		for (i = h & mask; refs[i] != EMPTY; i = (i + 1) & mask)
+			if (hashes[i] == h && keyEquals(i, key))
+				return i;
+		return ~i;
+	}
+
+	private int indexOf(byte[] bytes, int offset, int length, int h) {
+		int i;
+		for (i = h & mask; refs[i] != EMPTY; i = (i + 1) & mask)
+			if (hashes[i] == h && keyEquals(i, bytes, offset, length))
+				return i;
+		return ~i;
+	}
+
+	private static void checkSlice(byte[] bytes, int offset, int length) {
+		if (bytes == null)
+			throw new IllegalArgumentException("key bytes are null");
+		if (offset < 0 || length < 0 || offset > bytes.length - length)
+			throw new IllegalArgumentException("key slice out of range");
+	}
+
+	/**
+	 * Returns true if this symbol table contains the specified key.
+	 */
+	public boolean contains(CharSequence key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Returns the value associated with the specified key, without
+	 * allocating.
+	 */
+	public Value get(CharSequence key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to get() is null");
+		int i = indexOf(key, hash(key));
+		return i >= 0 ? vals[i] : null;
+	}
+
+	/**
+	 * Returns the value of the key whose UTF-8 bytes are the given slice,
+	 * without allocating.
+	 */
+	public Value get(byte[] bytes, int offset, int length) {
+		checkSlice(bytes, offset, length);
+		int i = indexOf(bytes, offset, length, hash(bytes, offset, length));
+		return i >= 0 ? vals[i] : null;
+	}
+
+	/**
+	 * Inserts the specified key-value pair into the symbol table, overwriting
+	 * the old value if the key is already present. Deletes the key if the
+	 * value is null.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if key is null or its UTF-8 encoding is longer than
+	 *             MAX_KEY_LENGTH
+	 */
+	public void put(CharSequence key, Value val) {
+		if (key == null)
+			throw new IllegalArgumentException("first argument to put() is null");
+		if (val == null) {
+			delete(key);
+			return;
+		}
+		int h = hash(key);
+		int i = indexOf(key, h);
+		if (i >= 0) {
+			vals[i] = val;
+			return;
+		}
+		long ref = reserve(utf8Length(key));
+		if (growIfFull())
+			i = indexOf(key, h);
+		byte[] chunk = chunks[chunkOf(ref)];
+		int p = offsetOf(ref);
+		for (int c = 0; c < key.length();) {
+			int utf8 = encode(key, c);
+			int n = byteCount(utf8);
+			for (int b = 0; b < n; b++)
+				chunk[p++] = (byte) (utf8 >>> 8 * b);
+			c += n == 4 ? 2 : 1;
+		}
+		store(~i, ref, h, val);
+	}
+
+	/**
+	 * Inserts a pair whose key is given as UTF-8 bytes; the bytes are copied
+	 * as they are, without validation. Deletes the key if the value is null.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if bytes is null, the slice is out of range or longer
+	 *             than MAX_KEY_LENGTH
+	 */
+	public void put(byte[] bytes, int offset, int length, Value val) {
+		checkSlice(bytes, offset, length);
+		if (val == null) {
+			delete(bytes, offset, length);
+			return;
+		}
+		int h = hash(bytes, offset, length);
+		int i = indexOf(bytes, offset, length, h);
+		if (i >= 0) {
+			vals[i] = val;
+			return;
+		}
+		long ref = reserve(length);
+		if (growIfFull())
+			i = indexOf(bytes, offset, length, h);
+		System.arraycopy(bytes, offset, chunks[chunkOf(ref)], offsetOf(ref), length);
+		store(~i, ref, h, val);
+	}
+
+	private void store(int i, long ref, int h, Value val) {
+		refs[i] = ref;
+		hashes[i] = h;
+		vals[i] = val;
+		numberOfPairs++;
+	}
+
+	// doubles the table if one more pair would pass 3/4 full
+	private boolean growIfFull() {
+		if (numberOfPairs + 1 <= (mask + 1) / 4 * 3 || mask + 1 == 1 << 30)
+			return false;
+		resize(2 * (mask + 1));
+		return true;
+	}
+
+	// moves the slots into a table of the given capacity; the key bytes stay
+	// where they are
+	private void resize(int capacity) {
+		long[] oldRefs = refs;
+		int[] oldHashes = hashes;
+		Value[] oldVals = vals;
+		allocate(capacity);
+		for (int j = 0; j < oldRefs.length; j++) {
+			if (oldRefs[j] == EMPTY)
+				continue;
+			int i;
+			for (i = oldHashes[j] & mask; refs[i] != EMPTY; i = (i + 1) & mask)
+				;
+			refs[i] = oldRefs[j];
+			hashes[i] = oldHashes[j];
+			vals[i] = oldVals[j];
+		}
+	}
+
+	// returns the ref of length free bytes at the end of the arena; a key
+	// longer than a chunk gets a chunk of its own, at offset 0. The offset
+	// has to stay below CHUNK_SIZE to fit its bits of the ref, so even an
+	// empty key starts a new chunk once the last one is full or oversized.
+	private long reserve(int length) {
+		if (length > MAX_KEY_LENGTH)
+			throw new IllegalArgumentException("key longer than " + MAX_KEY_LENGTH + " bytes");
+		if (chunkCount == 0 || chunkUsed >= CHUNK_SIZE || chunkUsed + length > chunks[chunkCount - 1].length) {
+			if (chunkCount == MAX_CHUNKS)
+				throw new IllegalStateException("arena full");
+			if (chunkCount == chunks.length)
+				chunks = Arrays.copyOf(chunks, 2 * chunkCount);
+			chunks[chunkCount++] = new byte[Math.max(CHUNK_SIZE, length)];
+			chunkUsed = 0;
+		}
+		long ref = (long) (chunkCount - 1) << 44 | (long) chunkUsed << 24 | length;
+		chunkUsed += length;
+		arenaBytes += length;
+		return ref;
+	}
+
+	/**
+	 * Removes the specified key and its associated value from this symbol table
+	 * (if the key is in this symbol table).
+	 */
+	public void delete(CharSequence key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to delete() is null");
+		int i = indexOf(key, hash(key));
+		if (i >= 0)
+			remove(i);
+	}
+
+	/**
+	 * Removes the key whose UTF-8 bytes are the given slice.
+	 */
+	public void delete(byte[] bytes, int offset, int length) {
+		checkSlice(bytes, offset, length);
+		int i = indexOf(bytes, offset, length, hash(bytes, offset, length));
+		if (i >= 0)
+			remove(i);
+	}
+
+	// empties slot i and shifts back the keys of the cluster after it that
+	// may move closer to home
+	private void remove(int i) {
+		deadBytes += lengthOf(refs[i]);
+		numberOfPairs--;
+		int j = i;
+		for (;;) {
+			j = (j + 1) & mask;
+			if (refs[j] == EMPTY)
+				break;
+			int home = hashes[j] & mask;
+			// the key at j can fill the gap at i unless its home lies
+			// cyclically in (i, j]
+			if (((j - home) & mask) >= ((j - i) & mask)) {
+				refs[i] = refs[j];
+				hashes[i] = hashes[j];
+				vals[i] = vals[j];
+				i = j;
+			}
+		}
+		refs[i] = EMPTY;
+		vals[i] = null;
+
+		if (mask + 1 > INIT_CAPACITY && numberOfPairs <= (mask + 1) / 8)
+			resize((mask + 1) / 2);
+		if (deadBytes > CHUNK_SIZE && deadBytes > arenaBytes / 2)
+			compact();
+	}
+
+	// copies the live keys into fresh chunks, dropping the dead bytes
+	private void compact() {
+		byte[][] old = chunks;
+		chunks = new byte[1][];
+		chunkCount = 0;
+		chunkUsed = 0;
+		arenaBytes = 0;
+		deadBytes = 0;
+		for (int i = 0; i <= mask; i++) {
+			if (refs[i] == EMPTY)
+				continue;
+			long ref = reserve(lengthOf(refs[i]));
+			System.arraycopy(old[chunkOf(refs[i])], offsetOf(refs[i]), chunks[chunkOf(ref)], offsetOf(ref),
+					lengthOf(ref));
+			refs[i] = ref;
+		}
+	}
+
+	private String keyAt(int i) {
+		long ref = refs[i];
+		return new String(chunks[chunkOf(ref)], offsetOf(ref), lengthOf(ref), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns all keys in this symbol table as an Iterable; every key is
+	 * decoded into a new String.
+	 */
+	public Iterable<String> keys() {
+		Queue<String> queue = new Queue<String>();
+		for (int i = 0; i <= mask; i++)
+			if (refs[i] != EMPTY)
+				queue.enqueue(keyAt(i));
+		return queue;
+	}
+
+	/**
+	 * Passes every key, decoded into a new String, and its value to the
+	 * action.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if action is null
+	 */
+	public void forEach(BiConsumer<? super String, ? super Value> action) {
+		if (action == null)
+			throw new IllegalArgumentException("argument to forEach() is null");
+		for (int i = 0; i <= mask; i++)
+			if (refs[i] != EMPTY)
+				action.accept(keyAt(i), vals[i]);
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Compares the heap taken by short ASCII keys in this table and in a
+	 * LinearProbingHashST<String, Integer>, sharing the same values.
+	 *
+	 * Usage: java hashes.StringArenaHashST [keys]
+	 */
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 3000000;
+		Random random = new Random(25);
+		Integer one = 1;
+		char[] buffer = new char[12];
+
+		long before = usedHeap();
+		StringArenaHashST<Integer> arena = new StringArenaHashST<Integer>();
+		for (int i = 0; i < n; i++) {
+			int length = 8 + random.nextInt(5);
+			for (int c = 0; c < length; c++)
+				buffer[c] = (char) ('a' + random.nextInt(26));
+			arena.put(CharBuffer.wrap(buffer, 0, length), one);
+		}
+		long arenaHeap = usedHeap() - before;
+		System.out.printf("StringArenaHashST:   %d keys, %.1f MB, %.1f bytes/key%n", arena.size(), arenaHeap / 1e6,
+				arenaHeap / (double) arena.size());
+
+		random = new Random(25);
+		before = usedHeap();
+		LinearProbingHashST<String, Integer> strings = new LinearProbingHashST<String, Integer>();
+		for (int i = 0; i < n; i++) {
+			int length = 8 + random.nextInt(5);
+			for (int c = 0; c < length; c++)
+				buffer[c] = (char) ('a' + random.nextInt(26));
+			strings.put(new String(buffer, 0, length), one);
+		}
+		long stringHeap = usedHeap() - before;
+		System.out.printf("LinearProbingHashST: %d keys, %.1f MB, %.1f bytes/key%n", strings.size(),
+				stringHeap / 1e6, stringHeap / (double) strings.size());
+		if (arena.size() != strings.size() || arenaHeap == 0)
+			throw new IllegalStateException("tables differ");
+		System.out.printf("%.1fx less heap%n", stringHeap / (double) arenaHeap);
+	}
+
+}
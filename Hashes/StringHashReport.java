@@ -0,0 +1,159 @@
+package dataStructures;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the StringHashStrategy implementations on a key set: how evenly
+ * they fill a table with as many buckets as keys, and how fast they hash.
+ *
+ * Buckets are taken with the strategy's index() as in HashFunction, once
+ * for a power-of-two bucket count, which only sees the low bits of the
+ * hash, and once for a prime one. For each it prints the share of empty buckets
+ * (e^(-keys/buckets) for a random function), the longest chain, and the
+ * chi-squared statistic divided by its degrees of freedom (about 1.0 for a
+ * random function, much larger for a skewed one). It also prints how many
+ * distinct keys share their full 32-bit hash with an earlier key, and the
+ * time per hash.
+ *
+ * Usage: java dataStructures.StringHashReport [file with one key per line]
+ *
+ * Without a file, it reports on synthetic key sets: lowercase words, numeric
+ * ids, URLs with a long shared prefix, and mixed-case non-ASCII names.
+ */
+public class StringHashReport {
+
+	private static final StringHashStrategy[] STRATEGIES = { StringHashStrategy.POLYNOMIAL, StringHashStrategy.FNV1A,
+			StringHashStrategy.MURMUR3, StringHashStrategy.XXHASH, StringHashStrategy.randomized() };
+
+	// keeps the warm-up loops from being optimized away
+	static volatile int sink;
+
+	private static void report(String name, String[] keyList) {
+		String[] keys = new LinkedHashSet<String>(Arrays.asList(keyList)).toArray(new String[0]);
+		int n = keys.length;
+		int powerOfTwo = Integer.highestOneBit(Math.max(1, n - 1)) << 1;
+		int prime = nextPrime(n);
+		System.out.printf("%n%s: %d keys, %d and %d buckets%n", name, n, powerOfTwo, prime);
+		System.out.printf("%-26s %13s %13s %13s %10s %9s%n", "strategy", "empty chi 2^k", "empty chi p",
+				"max 2^k/p", "same hash", "ns/hash");
+
+		int[] hashes = new int[n];
+		for (StringHashStrategy strategy : STRATEGIES) {
+			// warm up, then time the hashing alone
+			for (int round = 0; round < 3; round++)
+				for (String key : keys)
+					sink += strategy.hash(key);
+			long start = System.nanoTime();
+			for (int i = 0; i < n; i++)
+				hashes[i] = strategy.hash(keys[i]);
+			double nanosPerHash = (System.nanoTime() - start) / (double) n;
+
+			Distribution pow = new Distribution(keys, strategy, powerOfTwo);
+			Distribution pri = new Distribution(keys, strategy, prime);
+
+			int[] sorted = hashes.clone();
+			Arrays.sort(sorted);
+			int sameHash = 0;
+			for (int i = 1; i < n; i++)
+				if (sorted[i] == sorted[i - 1])
+					sameHash++;
+
+			System.out.printf("%-26s %6.1f%% %5.1f %6.1f%% %5.1f %6d/%-6d %10d %9.1f%n", strategy,
+					pow.emptyPercent, pow.chiSquaredRatio, pri.emptyPercent, pri.chiSquaredRatio, pow.maxChain,
+					pri.maxChain, sameHash, nanosPerHash);
+		}
+	}
+
+	// bucket occupancy of a set of keys indexed into m buckets
+	private static final class Distribution {
+		final double emptyPercent;
+		final double chiSquaredRatio; // chi-squared over degrees of freedom
+		final int maxChain;
+
+		Distribution(String[] keys, StringHashStrategy strategy, int m) {
+			int[] counts = new int[m];
+			for (String key : keys)
+				counts[strategy.index(key, m)]++;
+			double expected = keys.length / (double) m;
+			double chiSquared = 0;
+			int empty = 0;
+			int max = 0;
+			for (int c : counts) {
+				if (c == 0)
+					empty++;
+				max = Math.max(max, c);
+				chiSquared += (c - expected) * (c - expected) / expected;
+			}
+			emptyPercent = 100.0 * empty / m;
+			chiSquaredRatio = m > 1 ? chiSquared / (m - 1) : 0;
+			maxChain = max;
+		}
+	}
+
+	private static int nextPrime(int n) {
+		for (int p = Math.max(2, n);; p++) {
+			boolean isPrime = true;
+			for (int d = 2; (long) d * d <= p && isPrime; d++)
+				isPrime = p % d != 0;
+			if (isPrime)
+				return p;
+		}
+	}
+
+	private static String[] lowercaseWords(int n, Random random) {
+		String[] keys = new String[n];
+		for (int i = 0; i < n; i++) {
+			char[] word = new char[3 + random.nextInt(8)];
+			for (int j = 0; j < word.length; j++)
+				word[j] = (char) ('a' + random.nextInt(26));
+			keys[i] = new String(word);
+		}
+		return keys;
+	}
+
+	private static String[] numericIds(int n) {
+		String[] keys = new String[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = "user" + (1000000 + i);
+		return keys;
+	}
+
+	private static String[] urls(int n, Random random) {
+		String[] keys = new String[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = "https://example.com/catalog/products/category/" + random.nextInt(50) + "/item/" + i;
+		return keys;
+	}
+
+	private static String[] mixedNames(int n, Random random) {
+		String[] parts = { "Zo\u00eb", "M\u00fcller", "\u00c5sa", "Jos\u00e9", "\u674e",
+				"\u0418\u0432\u0430\u043d", "O'Brien", "Nguy\u1ec5n", "Smith", "D\u00edaz" };
+		String[] keys = new String[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = parts[random.nextInt(parts.length)] + " " + parts[random.nextInt(parts.length)] + " "
+					+ random.nextInt(1000);
+		return keys;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) {
+			List<String> lines = Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8);
+			report(args[0], lines.toArray(new String[0]));
+			return;
+		}
+		Random random = new Random(1);
+		int n = 100000;
+		report("lowercase words", lowercaseWords(n, random));
+		report("numeric ids", numericIds(n));
+		report("urls", urls(n, random));
+		report("mixed names", mixedNames(n, random));
+	}
+
+}
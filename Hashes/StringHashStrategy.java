@@ -0,0 +1,179 @@
+package dataStructures;
+
+import java.security.SecureRandom;
+
+/**
+ * A hash function for strings. Implementations return a full 32-bit hash;
+ * index() reduces it to a bucket with Math.floorMod().
+ *
+ * POLYNOMIAL is HashFunction's original a=1..z=26 base-27 hash. Its hash()
+ * wraps around 2^32 for words of seven or more letters, so its index()
+ * reduces modulo the bucket count after every char instead, as the original
+ * did, and keeps the original bucket of every lowercase word. FNV1A,
+ * MURMUR3 and XXHASH mix every bit of every char and spread non-lowercase
+ * and non-ASCII keys evenly; randomized() gives a MURMUR3 variant with a
+ * secret seed, so keys cannot be chosen in advance to collide.
+ */
+public interface StringHashStrategy {
+
+	int hash(CharSequence s);
+
+	/**
+	 * Returns the bucket of s among the given number of buckets.
+	 */
+	default int index(CharSequence s, int buckets) {
+		return Math.floorMod(hash(s), buckets);
+	}
+
+	StringHashStrategy POLYNOMIAL = new Polynomial();
+	StringHashStrategy FNV1A = new Fnv1a();
+	StringHashStrategy MURMUR3 = new Murmur3(0);
+	StringHashStrategy XXHASH = new XxHash(0);
+
+	/**
+	 * Returns MURMUR3 with the given seed.
+	 */
+	static StringHashStrategy murmur3(int seed) {
+		return new Murmur3(seed);
+	}
+
+	/**
+	 * Returns MURMUR3 with a seed drawn from a secure random source.
+	 */
+	static StringHashStrategy randomized() {
+		return new Murmur3(new SecureRandom().nextInt());
+	}
+
+	// sum of (char - 96) * 27^i, the hash HashFunction always used
+	final class Polynomial implements StringHashStrategy {
+		public int hash(CharSequence s) {
+			int h = 0;
+			for (int i = 0; i < s.length(); i++)
+				h = h * 27 + (s.charAt(i) - 96);
+			return h;
+		}
+
+		public int index(CharSequence s, int buckets) {
+			int h = 0;
+			for (int i = 0; i < s.length(); i++)
+				h = (int) Math.floorMod(h * 27L + (s.charAt(i) - 96), buckets);
+			return h;
+		}
+
+		public String toString() {
+			return "polynomial";
+		}
+	}
+
+	// 32-bit FNV-1a over the two bytes of each char
+	final class Fnv1a implements StringHashStrategy {
+		public int hash(CharSequence s) {
+			int h = 0x811C9DC5;
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				h = (h ^ (c & 0xFF)) * 0x01000193;
+				h = (h ^ (c >>> 8)) * 0x01000193;
+			}
+			return h;
+		}
+
+		public String toString() {
+			return "fnv1a";
+		}
+	}
+
+	// MurmurHash3 x86_32 over the chars, two per 32-bit block
+	final class Murmur3 implements StringHashStrategy {
+		private final int seed;
+
+		Murmur3(int seed) {
+			this.seed = seed;
+		}
+
+		public int hash(CharSequence s) {
+			int length = s.length();
+			int h = seed;
+			for (int i = 1; i < length; i += 2) {
+				h ^= mixK(s.charAt(i - 1) | (s.charAt(i) << 16));
+				h = Integer.rotateLeft(h, 13) * 5 + 0xE6546B64;
+			}
+			if ((length & 1) == 1)
+				h ^= mixK(s.charAt(length - 1));
+			h ^= 2 * length;
+			h = (h ^ (h >>> 16)) * 0x85EBCA6B;
+			h = (h ^ (h >>> 13)) * 0xC2B2AE35;
+			return h ^ (h >>> 16);
+		}
+
+		private static int mixK(int k) {
+			return Integer.rotateLeft(k * 0xCC9E2D51, 15) * 0x1B873593;
+		}
+
+		public String toString() {
+			return seed == 0 ? "murmur3" : "murmur3(seed " + Integer.toHexString(seed) + ")";
+		}
+	}
+
+	// xxHash32 over the chars, two per 32-bit lane input; strings of 8 chars
+	// or more run four independent lanes
+	final class XxHash implements StringHashStrategy {
+		private static final int P1 = 0x9E3779B1;
+		private static final int P2 = 0x85EBCA77;
+		private static final int P3 = 0xC2B2AE3D;
+		private static final int P4 = 0x27D4EB2F;
+		private static final int P5 = 0x165667B1;
+
+		private final int seed;
+
+		XxHash(int seed) {
+			this.seed = seed;
+		}
+
+		public int hash(CharSequence s) {
+			int length = s.length();
+			int words = length / 2;
+			int i = 0;
+			int h;
+			if (words >= 4) {
+				int v1 = seed + P1 + P2;
+				int v2 = seed + P2;
+				int v3 = seed;
+				int v4 = seed - P1;
+				for (; i + 4 <= words; i += 4) {
+					v1 = round(v1, word(s, i));
+					v2 = round(v2, word(s, i + 1));
+					v3 = round(v3, word(s, i + 2));
+					v4 = round(v4, word(s, i + 3));
+				}
+				h = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7) + Integer.rotateLeft(v3, 12)
+						+ Integer.rotateLeft(v4, 18);
+			} else {
+				h = seed + P5;
+			}
+			h += 2 * length;
+			for (; i < words; i++)
+				h = Integer.rotateLeft(h + word(s, i) * P3, 17) * P4;
+			if ((length & 1) == 1) {
+				char c = s.charAt(length - 1);
+				h = Integer.rotateLeft(h + (c & 0xFF) * P5, 11) * P1;
+				h = Integer.rotateLeft(h + (c >>> 8) * P5, 11) * P1;
+			}
+			h = (h ^ (h >>> 15)) * P2;
+			h = (h ^ (h >>> 13)) * P3;
+			return h ^ (h >>> 16);
+		}
+
+		private static int word(CharSequence s, int i) {
+			return s.charAt(2 * i) | (s.charAt(2 * i + 1) << 16);
+		}
+
+		private static int round(int acc, int input) {
+			return Integer.rotateLeft(acc + input * P2, 13) * P1;
+		}
+
+		public String toString() {
+			return "xxhash";
+		}
+	}
+
+}
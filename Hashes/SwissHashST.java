@@ -0,0 +1,342 @@
+package hashes;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.function.BiConsumer;
+
+import queue.Queue;
+
+/**
+ * Collision resolution by open addressing over groups of control bytes
+ * (Swiss table).
+ *
+ * The slots are split into groups of eight. Each slot has a control byte:
+ * EMPTY, DELETED, or the low 7 bits of its key's hash when it is full. The
+ * eight control bytes of a group are packed into one long, so a probe loads
+ * a single word and compares all eight bytes at once with SWAR bit tricks.
+ * keys[i].equals() only runs for slots whose 7 hash bits match, and a lookup
+ * stops at the first group that has an empty slot, so a miss usually costs
+ * one load from ctrl and no key dereference at all.
+ *
+ * Groups are probed in triangular order. delete() can mark a slot EMPTY when
+ * its group already had an empty slot, since no probe ever continued past
+ * that group; otherwise it leaves a DELETED marker that insertion reuses.
+ *
+ * The full hash of each key is kept in a parallel int array. A tag match is
+ * checked against it before equals() runs, and resizes reuse it instead of
+ * calling hashCode() again.
+ */
+public class SwissHashST<Key, Value> {
+	private static final int GROUP_WIDTH = 8; // slots per control word
+	private static final int INIT_GROUPS = 2;
+
+	private static final long EMPTY = 0x80; // 1000 0000
+	private static final long DELETED = 0xFE; // 1111 1110
+
+	private static final long LSBS = 0x0101010101010101L; // low bit of each byte
+	private static final long MSBS = 0x8080808080808080L; // high bit of each byte
+
+	private int numberOfPairs; // number of key-value pairs
+	private int growthLeft; // EMPTY slots that may still be filled
+	private int groupMask; // number of groups - 1, a power of two minus one
+	private long[] ctrl; // control bytes, eight per group
+	private Key[] keys; // the keys
+	private Value[] vals; // the values
+	private int[] hashes; // spread hash of each key
+	private int modCount; // structural modifications, for fail-fast walks
+
+	public SwissHashST() {
+		this(INIT_GROUPS * GROUP_WIDTH);
+	}
+
+	/**
+	 * Initializes an empty symbol table that holds capacity pairs without
+	 * resizing.
+	 */
+	public SwissHashST(int capacity) {
+		int groups = INIT_GROUPS;
+		while ((long) groups * GROUP_WIDTH * 7 / 8 < capacity)
+			groups <<= 1;
+		allocate(groups);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void allocate(int groups) {
+		groupMask = groups - 1;
+		ctrl = new long[groups];
+		Arrays.fill(ctrl, EMPTY * LSBS);
+		keys = (Key[]) new Object[groups * GROUP_WIDTH];
+		vals = (Value[]) new Object[groups * GROUP_WIDTH];
+		hashes = new int[groups * GROUP_WIDTH];
+		// keep at least one empty slot per 8, so every probe terminates
+		growthLeft = groups * GROUP_WIDTH * 7 / 8 - numberOfPairs;
+	}
+
+	/**
+	 * Returns the number of key-value pairs
+	 */
+	public int size() {
+		return numberOfPairs;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Returns true if this symbol table contains the specified key.
+	 */
+	public boolean contains(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to contains() is null");
+		return indexOf(key, hash(key)) >= 0;
+	}
+
+	// spread hash code of the key; the low 7 bits go into the control byte,
+	// the rest choose the first group
+	private static int hash(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static long h2(int h) {
+		return h & 0x7F;
+	}
+
+	private int firstGroup(int h) {
+		return (h >>> 7) & groupMask;
+	}
+
+	// high bit set in every byte of the group equal to b (false positives
+	// are possible above a true match, callers verify the key)
+	private static long match(long group, long b) {
+		long x = group ^ (LSBS * b);
+		return (x - LSBS) & ~x & MSBS;
+	}
+
+	// high bit set in every EMPTY byte: bit 7 set and bit 1 clear
+	private static long matchEmpty(long group) {
+		return group & (~group << 6) & MSBS;
+	}
+
+	// high bit set in every EMPTY or DELETED byte: bit 7 set and bit 0 clear
+	private static long matchEmptyOrDeleted(long group) {
+		return group & ~(group << 7) & MSBS;
+	}
+
+	// slot within the group of the lowest set high bit
+	private static int lowestSlot(long bits) {
+		return Long.numberOfTrailingZeros(bits) >>> 3;
+	}
+
+	private void setCtrl(int slot, long b) {
+		int g = slot / GROUP_WIDTH;
+		int shift = (slot % GROUP_WIDTH) * 8;
+		ctrl[g] = (ctrl[g] & ~(0xFFL << shift)) | (b << shift);
+	}
+
+	// slot of the key with hash h, or -1 if the key is not in the table
+	private int indexOf(Key key, int h) {
+		long tag = h2(h);
+		int g = firstGroup(h);
+		for (int step = 1;; g = (g + step++) & groupMask) {
+			long group = ctrl[g];
+			for (long m = match(group, tag); m != 0; m &= m - 1) {
+				int i = g * GROUP_WIDTH + lowestSlot(m);
+				if (hashes[i] == h && key.equals(keys[i]))
+					return i;
+			}
+			if (matchEmpty(group) != 0)
+				return -1;
+		}
+	}
+
+	/**
+	 * Returns the value associated with the specified key.
+	 */
+	public Value get(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to get() is null");
+		int i = indexOf(key, hash(key));
+		return i >= 0 ? vals[i] : null;
+	}
+
+	/**
+	 * Inserts the specified key-value pair into the symbol table, overwriting
+	 * the old value with the new value if the symbol table already contains the
+	 * specified key. Deletes the specified key (and its associated value) from
+	 * this symbol table if the specified value is null.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if key is null
+	 */
+	public void put(Key key, Value val) {
+		if (key == null)
+			throw new IllegalArgumentException("first argument to put() is null");
+
+		if (val == null) {
+			delete(key);
+			return;
+		}
+
+		int h = hash(key);
+		int i = indexOf(key, h);
+		if (i >= 0) {
+			vals[i] = val;
+			return;
+		}
+
+		if (growthLeft == 0) {
+			// double if live keys fill the table, otherwise drop the DELETED
+			int groups = groupMask + 1;
+			if (numberOfPairs >= groups * GROUP_WIDTH * 7 / 16)
+				groups *= 2;
+			resize(groups);
+		}
+		insert(key, val, h);
+		numberOfPairs++;
+		modCount++;
+	}
+
+	// places a key known to be absent in the first free slot on its probe
+	// sequence
+	private void insert(Key key, Value val, int h) {
+		int g = firstGroup(h);
+		for (int step = 1;; g = (g + step++) & groupMask) {
+			long free = matchEmptyOrDeleted(ctrl[g]);
+			if (free != 0) {
+				int i = g * GROUP_WIDTH + lowestSlot(free);
+				if (((ctrl[g] >>> ((i % GROUP_WIDTH) * 8)) & 0xFF) == EMPTY)
+					growthLeft--;
+				setCtrl(i, h2(h));
+				keys[i] = key;
+				vals[i] = val;
+				hashes[i] = h;
+				return;
+			}
+		}
+	}
+
+	private void resize(int groups) {
+		Key[] oldKeys = keys;
+		Value[] oldVals = vals;
+		int[] oldHashes = hashes;
+		long[] oldCtrl = ctrl;
+		allocate(groups);
+		growthLeft += numberOfPairs; // allocate() assumed they were placed
+		for (int g = 0; g < oldCtrl.length; g++) {
+			// full slots have the high bit clear
+			for (long m = ~oldCtrl[g] & MSBS; m != 0; m &= m - 1) {
+				int i = g * GROUP_WIDTH + lowestSlot(m);
+				insert(oldKeys[i], oldVals[i], oldHashes[i]);
+			}
+		}
+	}
+
+	/**
+	 * Removes the specified key and its associated value from this symbol table
+	 * (if the key is in this symbol table).
+	 */
+	public void delete(Key key) {
+		if (key == null)
+			throw new IllegalArgumentException("argument to delete() is null");
+		int i = indexOf(key, hash(key));
+		if (i < 0)
+			return;
+
+		if (matchEmpty(ctrl[i / GROUP_WIDTH]) != 0) {
+			setCtrl(i, EMPTY);
+			growthLeft++;
+		} else {
+			setCtrl(i, DELETED);
+		}
+		keys[i] = null;
+		vals[i] = null;
+		numberOfPairs--;
+		modCount++;
+	}
+
+	/**
+	 * Returns all keys in this symbol table as an Iterable.
+	 */
+	public Iterable<Key> keys() {
+		Queue<Key> queue = new Queue<Key>();
+		for (int g = 0; g <= groupMask; g++)
+			for (long m = ~ctrl[g] & MSBS; m != 0; m &= m - 1)
+				queue.enqueue(keys[g * GROUP_WIDTH + lowestSlot(m)]);
+		return queue;
+	}
+
+	/**
+	 * Passes every key and its value to the action, without allocating.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if action is null
+	 * @throws ConcurrentModificationException
+	 *             if the action adds or removes a key
+	 */
+	public void forEach(BiConsumer<? super Key, ? super Value> action) {
+		if (action == null)
+			throw new IllegalArgumentException("argument to forEach() is null");
+		int expectedModCount = modCount;
+		Key[] keys = this.keys;
+		Value[] vals = this.vals;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				action.accept(keys[i], vals[i]);
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+			}
+		}
+	}
+
+	/**
+	 * Returns a cursor over the entries of this symbol table; reset() makes
+	 * it reusable for later scans.
+	 */
+	public EntryCursor<Key, Value> cursor() {
+		return new Cursor();
+	}
+
+	// walks the slots of the table as it was when created or last reset
+	private class Cursor implements EntryCursor<Key, Value> {
+		private Key[] keys;
+		private Value[] vals;
+		private int slot; // current slot, or -1 before the first
+		private int expectedModCount;
+
+		Cursor() {
+			reset();
+		}
+
+		public boolean next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			while (++slot < keys.length)
+				if (keys[slot] != null)
+					return true;
+			slot = keys.length;
+			return false;
+		}
+
+		public Key key() {
+			if (slot < 0 || slot >= keys.length)
+				throw new IllegalStateException("cursor is not on an entry");
+			return keys[slot];
+		}
+
+		public Value value() {
+			if (slot < 0 || slot >= keys.length)
+				throw new IllegalStateException("cursor is not on an entry");
+			return vals[slot];
+		}
+
+		public void reset() {
+			keys = SwissHashST.this.keys;
+			vals = SwissHashST.this.vals;
+			slot = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+}
@@ -0,0 +1,283 @@
+package hashes;
+
+/**
+ * Bounded cache with W-TinyLFU admission.
+ *
+ * New entries land in a small LRU window (1% of the capacity). An entry
+ * pushed out of the window is a candidate for the main region, a segmented
+ * LRU split into probation (20%) and protected (80%) segments. The candidate
+ * only gets in if a FrequencySketch of recent accesses rates it above the
+ * probation entry it would displace; otherwise the candidate itself is
+ * dropped. A hit in probation promotes the entry to protected, and protected
+ * overflow falls back to probation. A one-off scan therefore churns through
+ * the window while the frequently used entries stay in the main region,
+ * where plain LRU would let the scan flush them out.
+ *
+ * Capacity is a total weight. Every entry weighs 1 unless a Weigher says
+ * otherwise, so by default it is an entry count. With a Weigher the number
+ * of entries is not known up front, so the sketch grows as they arrive.
+ */
+public class WTinyLfuCache<K, V> {
+	private static final double WINDOW_SHARE = 0.01;
+	private static final double PROTECTED_SHARE = 0.8; // of the main region
+	private static final int INITIAL_SKETCH = 64; // keys the sketch of a weighted cache starts with
+
+	/**
+	 * Computes the weight of an entry; weights must not be negative.
+	 */
+	public interface Weigher<K, V> {
+		int weigh(K key, V value);
+	}
+
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+
+	private static final class Node<K, V> {
+		final K key;
+		final int hash;
+		V value;
+		int weight;
+		int region;
+		Node<K, V> prev, next;
+
+		Node(K key, int hash) {
+			this.key = key;
+			this.hash = hash;
+		}
+	}
+
+	private final long maximumWeight;
+	private final long windowMax;
+	private final long protectedMax;
+	private final Weigher<K, V> weigher;
+	private final HashMap<K, Node<K, V>> index = new HashMap<K, Node<K, V>>();
+	private final FrequencySketch sketch;
+
+	// sentinels of the three LRU lists, most recent first
+	@SuppressWarnings("unchecked")
+	private final Node<K, V>[] lists = (Node<K, V>[]) new Node<?, ?>[3];
+	private final long[] weights = new long[3]; // weight of each region
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Initializes an empty cache holding up to maximumSize entries.
+	 */
+	public WTinyLfuCache(int maximumSize) {
+		this(maximumSize, null);
+	}
+
+	/**
+	 * Initializes an empty cache holding entries up to a total weight.
+	 *
+	 * @param weigher
+	 *            weight of each entry, or null to count entries
+	 * @throws IllegalArgumentException
+	 *             if maximumWeight is not positive
+	 */
+	public WTinyLfuCache(long maximumWeight, Weigher<K, V> weigher) {
+		if (maximumWeight <= 0)
+			throw new IllegalArgumentException("maximum weight must be positive");
+		this.maximumWeight = maximumWeight;
+		this.weigher = weigher;
+		windowMax = Math.max(1, (long) (maximumWeight * WINDOW_SHARE));
+		protectedMax = (long) ((maximumWeight - windowMax) * PROTECTED_SHARE);
+		// a weight says little about the entry count, so a weighted cache's
+		// sketch starts small and grows with the entries
+		sketch = new FrequencySketch((int) Math.min(weigher == null ? 1 << 26 : INITIAL_SKETCH, maximumWeight));
+		for (int r = 0; r < lists.length; r++) {
+			Node<K, V> head = new Node<K, V>(null, 0);
+			head.prev = head;
+			head.next = head;
+			lists[r] = head;
+		}
+	}
+
+	public int size() {
+		return index.size();
+	}
+
+	/**
+	 * Returns the total weight of the cached entries.
+	 */
+	public long weight() {
+		return weights[WINDOW] + weights[PROBATION] + weights[PROTECTED];
+	}
+
+	public long maximumWeight() {
+		return maximumWeight;
+	}
+
+	private static int spread(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Returns the cached value of the key, or null, and counts a hit or a
+	 * miss.
+	 */
+	public V get(K key) {
+		if (key == null)
+			throw new IllegalArgumentException("key is null");
+		Node<K, V> x = index.get(key);
+		sketch.increment(x != null ? x.hash : spread(key));
+		if (x == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		onHit(x);
+		return x.value;
+	}
+
+	public boolean contains(K key) {
+		if (key == null)
+			throw new IllegalArgumentException("key is null");
+		return index.containsKey(key);
+	}
+
+	/**
+	 * Caches the value under the key, evicting as needed. A new entry may be
+	 * evicted again at once if it is heavier than the whole window and loses
+	 * the admission test.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if key or value is null, or the weight is negative
+	 */
+	public void put(K key, V value) {
+		if (key == null || value == null)
+			throw new IllegalArgumentException("key and value must not be null");
+		int weight = weigher == null ? 1 : weigher.weigh(key, value);
+		if (weight < 0)
+			throw new IllegalArgumentException("negative weight");
+		Node<K, V> x = index.get(key);
+		if (x != null) {
+			sketch.increment(x.hash);
+			weights[x.region] += weight - x.weight;
+			x.value = value;
+			x.weight = weight;
+			onHit(x);
+		} else {
+			x = new Node<K, V>(key, spread(key));
+			sketch.increment(x.hash);
+			x.value = value;
+			x.weight = weight;
+			x.region = WINDOW;
+			index.put(key, x);
+			if (weigher != null)
+				sketch.ensureCapacity(index.size());
+			addFirst(x);
+		}
+		evict();
+	}
+
+	/**
+	 * Removes the key and returns its value, or null.
+	 */
+	public V remove(K key) {
+		if (key == null)
+			throw new IllegalArgumentException("key is null");
+		Node<K, V> x = index.remove(key);
+		if (x == null)
+			return null;
+		unlink(x);
+		return x.value;
+	}
+
+	private void onHit(Node<K, V> x) {
+		unlink(x);
+		if (x.region == PROBATION)
+			x.region = PROTECTED;
+		addFirst(x);
+		// protected overflow goes back to probation
+		while (weights[PROTECTED] > protectedMax) {
+			Node<K, V> demoted = lists[PROTECTED].prev;
+			unlink(demoted);
+			demoted.region = PROBATION;
+			addFirst(demoted);
+		}
+	}
+
+	// moves window overflow into the main region, letting each candidate in
+	// only if it is used more often than the entries it would push out
+	private void evict() {
+		while (weights[WINDOW] > windowMax) {
+			Node<K, V> candidate = lists[WINDOW].prev;
+			unlink(candidate);
+			candidate.region = PROBATION;
+			addFirst(candidate);
+			while (weight() > maximumWeight) {
+				Node<K, V> victim = lists[PROBATION].prev;
+				if (victim == candidate)
+					victim = lists[PROTECTED].prev;
+				if (victim == lists[PROTECTED] || victim == candidate
+						|| sketch.frequency(candidate.hash) <= sketch.frequency(victim.hash)) {
+					drop(candidate);
+					break;
+				}
+				drop(victim);
+			}
+		}
+		// a heavy update to a main entry can leave the main region over
+		while (weight() > maximumWeight) {
+			Node<K, V> victim = lists[PROBATION].prev;
+			if (victim == lists[PROBATION])
+				victim = lists[PROTECTED].prev;
+			if (victim == lists[PROTECTED])
+				victim = lists[WINDOW].prev;
+			drop(victim);
+		}
+	}
+
+	private void drop(Node<K, V> x) {
+		index.remove(x.key);
+		unlink(x);
+		evictions++;
+	}
+
+	private void addFirst(Node<K, V> x) {
+		Node<K, V> head = lists[x.region];
+		x.prev = head;
+		x.next = head.next;
+		head.next.prev = x;
+		head.next = x;
+		weights[x.region] += x.weight;
+	}
+
+	private void unlink(Node<K, V> x) {
+		x.prev.next = x.next;
+		x.next.prev = x.prev;
+		weights[x.region] -= x.weight;
+	}
+
+	public long hitCount() {
+		return hits;
+	}
+
+	public long missCount() {
+		return misses;
+	}
+
+	public long evictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * Returns hits over all get() calls, or 0 before any.
+	 */
+	public double hitRate() {
+		long requests = hits + misses;
+		return requests == 0 ? 0 : hits / (double) requests;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("WTinyLfuCache(%d entries, weight %d/%d, %d hits, %d misses, %d evictions)", size(),
+				weight(), maximumWeight, hits, misses, evictions);
+	}
+
+}